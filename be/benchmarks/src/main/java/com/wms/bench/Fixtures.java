@@ -0,0 +1,39 @@
+package com.wms.bench;
+
+import com.wms.model.User;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Representative users shared by the benchmarks. */
+public final class Fixtures {
+    private static final long BASE_TIME = 1_700_000_000_000L;
+
+    private Fixtures() {
+    }
+
+    public static User user(int i) {
+        User user = new User(
+                i,
+                "user" + i,
+                "user" + i + "@example.com",
+                "User Number " + i,
+                1,
+                "active",
+                "manager, operator",
+                "data.export, data.import, role.assign, user.read, user.update",
+                new Timestamp(BASE_TIME + i * 1000L),
+                new Timestamp(BASE_TIME + i * 2000L));
+        user.setRowVersion(i);
+        return user;
+    }
+
+    public static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            users.add(user(i));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,82 @@
+package com.wms.bench;
+
+import com.wms.server.Router;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request dispatch: the route table {@code HttpServer} builds at startup, against the
+ * regex if-chain it replaced as a baseline. The table mirrors {@code HttpServer.setupRoutes};
+ * keep the two in step when routes are added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final Router.Handler NOOP = (exchange, params) -> { };
+
+    @Param({"GET /api/users", "GET /api/users/12345", "DELETE /api/users/12345", "PUT /api/users/export",
+            "GET /api/unknown"})
+    public String request;
+
+    private Router router;
+    private String method;
+    private String path;
+
+    @Setup
+    public void setup() {
+        router = new Router()
+                .add("POST", "/api/auth/login", NOOP)
+                .add("GET", "/api/users", "user.read", NOOP)
+                .add("POST", "/api/users", "user.create", NOOP)
+                .add("POST", "/api/users/bulk", "data.import", NOOP)
+                .add("GET", "/api/users/export", "data.export", NOOP)
+                .add("GET", "/api/users/{id:int}", "user.read", NOOP)
+                .add("PUT", "/api/users/{id:int}", "user.update", NOOP)
+                .add("DELETE", "/api/users/{id:int}", "user.delete", NOOP);
+        int space = request.indexOf(' ');
+        method = request.substring(0, space);
+        path = request.substring(space + 1);
+    }
+
+    @Benchmark
+    public Router.Match routeTable() {
+        return router.match(method, path);
+    }
+
+    @Benchmark
+    public int regexChain() {
+        if (path.equals("/api/auth/login") && "POST".equals(method)) {
+            return 1;
+        } else if (path.equals("/api/users") && "GET".equals(method)) {
+            return 2;
+        } else if (path.equals("/api/users") && "POST".equals(method)) {
+            return 3;
+        } else if (path.equals("/api/users/bulk") && "POST".equals(method)) {
+            return 4;
+        } else if (path.equals("/api/users/export") && "GET".equals(method)) {
+            return 5;
+        } else if (path.matches("/api/users/\\d+") && "GET".equals(method)) {
+            return Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+        } else if (path.matches("/api/users/\\d+") && "PUT".equals(method)) {
+            return Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+        } else if (path.matches("/api/users/\\d+") && "DELETE".equals(method)) {
+            return Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+        }
+        return 404;
+    }
+}
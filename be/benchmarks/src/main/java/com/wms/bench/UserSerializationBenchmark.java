@@ -0,0 +1,64 @@
+package com.wms.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.wms.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson cost of the user list response: {@code toJson} into a String and bytes as a
+ * page is sent, and row-by-row through a {@link JsonWriter} as {@code stream=true} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSerializationBenchmark {
+
+    @Param({"1", "50", "200", "1000"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private List<User> users;
+
+    @Setup
+    public void setup() {
+        users = Fixtures.users(size);
+    }
+
+    @Benchmark
+    public byte[] pageToBytes() {
+        return gson.toJson(users).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String streamWithJsonWriter() throws IOException {
+        StringWriter out = new StringWriter(size * 320);
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray();
+        for (User user : users) {
+            gson.toJson(user, User.class, writer);
+        }
+        writer.endArray();
+        writer.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package com.wms.repository;
+
+import com.wms.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PostgresUserRepository#mapUserView(ResultSet)} over an in-memory row. The row is a
+ * proxy {@link ResultSet}, so {@link #baselineColumnReads()} measures the stub alone and
+ * the difference is the cost of mapping. Lives in the repository package to reach the
+ * package-private mapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRowMappingBenchmark {
+    private ResultSet row;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("id", 42);
+        columns.put("username", "user42");
+        columns.put("email", "user42@example.com");
+        columns.put("full_name", "User Number 42");
+        columns.put("status_id", 1);
+        columns.put("status_name", "active");
+        columns.put("roles", "manager, operator");
+        columns.put("permissions", "data.export, data.import, role.assign, user.read, user.update");
+        columns.put("created_at", new Timestamp(1_700_000_000_000L));
+        columns.put("updated_at", new Timestamp(1_700_000_100_000L));
+        columns.put("row_version", 7L);
+
+        row = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object value = columns.get((String) args[0]);
+                    switch (method.getName()) {
+                        case "getInt":
+                            return value == null ? 0 : ((Number) value).intValue();
+                        case "getLong":
+                            return value == null ? 0L : ((Number) value).longValue();
+                        case "getString":
+                            return value == null ? null : value.toString();
+                        case "getTimestamp":
+                            return value;
+                        default:
+                            throw new SQLException("Unsupported: " + method.getName());
+                    }
+                });
+    }
+
+    @Benchmark
+    public User mapUserView() throws SQLException {
+        return PostgresUserRepository.mapUserView(row);
+    }
+
+    @Benchmark
+    public Object baselineColumnReads() throws SQLException {
+        row.getInt("id");
+        row.getString("username");
+        row.getString("email");
+        row.getString("full_name");
+        row.getInt("status_id");
+        row.getString("status_name");
+        row.getString("roles");
+        row.getString("permissions");
+        row.getTimestamp("created_at");
+        row.getLong("row_version");
+        return row.getTimestamp("updated_at");
+    }
+}
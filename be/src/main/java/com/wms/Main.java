@@ -1,9 +1,15 @@
 package com.wms;
 
+import com.wms.repository.Repositories;
 import com.wms.server.HttpServer;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && "--rebuild-read-model".equals(args[0])) {
+            rebuildReadModel();
+            return;
+        }
+
         try {
             HttpServer server = new HttpServer(8080);
             server.start();
@@ -14,5 +20,16 @@ public class Main {
             e.printStackTrace();
         }
     }
-}
 
+    private static void rebuildReadModel() {
+        try {
+            int rows = Repositories.users().rebuildReadModel();
+            System.out.println("Rebuilt ums.user_read_model: " + rows + " users");
+            System.exit(0);
+        } catch (Exception e) {
+            System.err.println("Failed to rebuild read model: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
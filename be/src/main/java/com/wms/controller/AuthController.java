@@ -2,11 +2,14 @@ package com.wms.controller;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
-import com.sun.net.httpserver.HttpExchange;
+import com.google.gson.JsonParseException;
+import com.wms.server.Exchange;
 import com.wms.server.HttpServer;
 import com.wms.service.AuthService;
+import com.wms.util.OverloadedException;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Map;
 
 public class AuthController {
@@ -18,7 +21,7 @@ public class AuthController {
         this.gson = new Gson();
     }
 
-    public void login(HttpExchange exchange) throws IOException {
+    public void login(Exchange exchange) throws IOException {
         try {
             String body = HttpServer.getRequestBody(exchange);
             JsonObject json = gson.fromJson(body, JsonObject.class);
@@ -31,10 +34,59 @@ public class AuthController {
             String response = gson.toJson(result);
             HttpServer.sendResponse(exchange, 200, response);
             
+        } catch (OverloadedException e) {
+            exchange.addResponseHeader("Retry-After", "1");
+            HttpServer.sendResponse(exchange, 503, gson.toJson(Map.of("error", e.getMessage())));
         } catch (Exception e) {
             String errorResponse = gson.toJson(Map.of("error", e.getMessage()));
             HttpServer.sendResponse(exchange, 401, errorResponse);
         }
     }
-}
 
+    /** Body {@code {"refreshToken": "..."}}; returns a new token pair like login, without the user. */
+    public void refresh(Exchange exchange) throws IOException {
+        try {
+            String refreshToken = readRefreshToken(HttpServer.getRequestBody(exchange));
+            if (refreshToken == null) {
+                HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error", "refreshToken is required")));
+                return;
+            }
+
+            Map<String, Object> result = authService.refresh(refreshToken);
+            HttpServer.sendResponse(exchange, 200, gson.toJson(result));
+        } catch (OverloadedException e) {
+            // the token may still be good: clients retry rather than log the user out
+            exchange.addResponseHeader("Retry-After", "1");
+            HttpServer.sendResponse(exchange, 503, gson.toJson(Map.of("error", e.getMessage())));
+        } catch (SQLException e) {
+            HttpServer.sendResponse(exchange, 500, gson.toJson(Map.of("error", e.getMessage())));
+        } catch (JsonParseException e) {
+            HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error", "Invalid request body")));
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 401, gson.toJson(Map.of("error", e.getMessage())));
+        }
+    }
+
+    /** Revokes the session of the bearer token and/or the body's {@code refreshToken}. */
+    public void logout(Exchange exchange) throws IOException {
+        try {
+            String refreshToken = readRefreshToken(HttpServer.getRequestBody(exchange));
+            if (authService.logout(HttpServer.getAuthToken(exchange), refreshToken)) {
+                HttpServer.sendResponse(exchange, 204, "");
+            } else {
+                HttpServer.sendResponse(exchange, 401, gson.toJson(Map.of("error", "Invalid or expired token")));
+            }
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+        }
+    }
+
+    private String readRefreshToken(String body) {
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        JsonObject json = gson.fromJson(body, JsonObject.class);
+        return json != null && json.has("refreshToken") && !json.get("refreshToken").isJsonNull()
+                ? json.get("refreshToken").getAsString() : null;
+    }
+}
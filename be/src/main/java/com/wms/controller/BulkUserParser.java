@@ -0,0 +1,182 @@
+package com.wms.controller;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.wms.model.BulkUserRow;
+import com.wms.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parses a bulk user import body. NDJSON lines use the same fields as
+ * {@code POST /api/users}; CSV needs a header row naming the columns
+ * {@code username, email, password, fullName, statusId, roles}, with roles
+ * separated by {@code ;}. Malformed rows come back already marked failed.
+ */
+class BulkUserParser {
+    private final Gson gson;
+
+    BulkUserParser(Gson gson) {
+        this.gson = gson;
+    }
+
+    List<BulkUserRow> parse(String body, String contentType) {
+        String type = contentType == null ? "" : contentType.toLowerCase();
+        boolean csv = type.contains("csv") || (!type.contains("json") && !body.stripLeading().startsWith("{"));
+        return csv ? parseCsv(body) : parseNdjson(body);
+    }
+
+    private List<BulkUserRow> parseNdjson(String body) {
+        List<BulkUserRow> rows = new ArrayList<>();
+        String[] lines = body.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            BulkUserRow row = new BulkUserRow(i + 1);
+            rows.add(row);
+            try {
+                JsonObject json = gson.fromJson(lines[i], JsonObject.class);
+                Map<String, String> fields = new HashMap<>();
+                for (String key : new String[]{"username", "email", "password", "fullName", "statusId"}) {
+                    JsonElement value = json.get(key);
+                    if (value != null && !value.isJsonNull()) {
+                        fields.put(key, value.getAsString());
+                    }
+                }
+                List<String> roles = new ArrayList<>();
+                JsonElement roleJson = json.get("roles");
+                if (roleJson != null && roleJson.isJsonArray()) {
+                    for (JsonElement role : (JsonArray) roleJson) {
+                        roles.add(role.getAsString());
+                    }
+                }
+                fill(row, fields, roles);
+            } catch (RuntimeException e) {
+                row.setError("Invalid JSON: " + e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    private List<BulkUserRow> parseCsv(String body) {
+        List<List<String>> records = readCsv(body);
+        List<BulkUserRow> rows = new ArrayList<>();
+        if (records.isEmpty()) {
+            return rows;
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> header = records.get(0);
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().replace("_", "").toLowerCase(), i);
+        }
+        if (!columns.containsKey("username") || !columns.containsKey("email") || !columns.containsKey("password")) {
+            throw new IllegalArgumentException("CSV header must include username, email and password");
+        }
+
+        for (int r = 1; r < records.size(); r++) {
+            List<String> record = records.get(r);
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            BulkUserRow row = new BulkUserRow(r + 1);
+            rows.add(row);
+
+            Map<String, String> fields = new HashMap<>();
+            fields.put("username", column(record, columns, "username"));
+            fields.put("email", column(record, columns, "email"));
+            fields.put("password", column(record, columns, "password"));
+            fields.put("fullName", column(record, columns, "fullname"));
+            fields.put("statusId", column(record, columns, "statusid"));
+            String roles = column(record, columns, "roles");
+            fill(row, fields, roles == null ? new ArrayList<>() : Arrays.stream(roles.split(";"))
+                    .map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList()));
+        }
+        return rows;
+    }
+
+    private static String column(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= record.size() || record.get(index).isEmpty()) {
+            return null;
+        }
+        return record.get(index);
+    }
+
+    private static void fill(BulkUserRow row, Map<String, String> fields, List<String> roles) {
+        User user = new User();
+        user.setUsername(fields.get("username"));
+        user.setEmail(fields.get("email"));
+        user.setFullName(fields.get("fullName"));
+        row.setUser(user);
+        row.setPassword(fields.get("password"));
+        row.setRoleNames(roles);
+
+        if (isBlank(user.getUsername()) || isBlank(user.getEmail()) || isBlank(row.getPassword())) {
+            row.setError("username, email and password are required");
+            return;
+        }
+        try {
+            String statusId = fields.get("statusId");
+            user.setStatusId(statusId == null ? 1 : Integer.parseInt(statusId.trim()));
+        } catch (NumberFormatException e) {
+            row.setError("statusId must be a number");
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /** RFC 4180 reader: quoted fields may contain commas, doubled quotes and newlines. */
+    private static List<List<String>> readCsv(String body) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < body.length() && body.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < body.length() && body.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        if (field.length() > 0 || !record.isEmpty()) {
+            record.add(field.toString());
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,36 @@
+package com.wms.controller;
+
+import com.wms.metrics.Metrics;
+import com.wms.server.Exchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/** Serves {@code GET /metrics} in the Prometheus text exposition format. */
+public class MetricsController {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+
+    public MetricsController() {
+        this.metrics = Metrics.getInstance();
+    }
+
+    public void getMetrics(Exchange exchange) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16384);
+        Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        metrics.writePrometheus(writer);
+
+        byte[] bytes = buffer.toByteArray();
+        exchange.setResponseHeader("Content-Type", CONTENT_TYPE);
+        exchange.setResponseHeader("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -3,63 +3,460 @@ package com.wms.controller;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
-import com.sun.net.httpserver.HttpExchange;
+import com.google.gson.stream.JsonWriter;
+import com.wms.model.BulkUserRow;
 import com.wms.model.User;
+import com.wms.model.UserChanges;
+import com.wms.model.UserPage;
+import com.wms.model.UserQuery;
+import com.wms.server.Exchange;
 import com.wms.server.HttpServer;
 import com.wms.service.AuthService;
+import com.wms.service.UserEventHub;
+import com.wms.service.UserSearchIndex;
 import com.wms.service.UserService;
+import com.wms.tracing.Trace;
+import com.wms.tracing.Tracer;
+import com.wms.util.CursorExpiredException;
+import com.wms.util.OverloadedException;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 public class UserController {
+    private static final int MAX_BULK_ROWS = 10000;
+
     private final UserService userService;
     private final AuthService authService;
     private final Gson gson;
+    private final BulkUserParser bulkUserParser;
 
     public UserController() {
         this.userService = new UserService();
         this.authService = new AuthService();
         this.gson = new Gson();
+        this.bulkUserParser = new BulkUserParser(gson);
+    }
+
+    public void getAllUsers(Exchange exchange) throws IOException {
+        Map<String, String> params = HttpServer.getQueryParams(exchange);
+        UserQuery query;
+        List<Integer> ids;
+        try {
+            query = parseUserQuery(params);
+            ids = parseIds(params.get("ids"));
+        } catch (IllegalArgumentException e) {
+            HttpServer.sendResponse(exchange, 400, 
+                gson.toJson(Map.of("error", e.getMessage())));
+            return;
+        }
+
+        if (ids != null) {
+            getUsersByIds(exchange, ids);
+            return;
+        }
+
+        // The version is read before the rows, so a write that lands in between
+        // changes the tag on the next poll rather than being hidden behind a 304.
+        String etag;
+        try {
+            etag = listETag(exchange, userService.getCollectionVersion());
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 500, 
+                gson.toJson(Map.of("error", e.getMessage())));
+            return;
+        }
+        if (HttpServer.matchesETag(exchange, etag)) {
+            HttpServer.sendNotModified(exchange, etag);
+            return;
+        }
+        HttpServer.setETag(exchange, etag);
+
+        if ("true".equalsIgnoreCase(params.get("stream"))) {
+            streamUsers(exchange, query);
+            return;
+        }
+
+        try {
+            UserPage page = userService.getUsers(query);
+            if (page.getNextCursor() != null) {
+                exchange.addResponseHeader("X-Next-Cursor", page.getNextCursor());
+            }
+            String response = gson.toJson(page.getUsers());
+            HttpServer.sendResponse(exchange, 200, response);
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 500, 
+                gson.toJson(Map.of("error", e.getMessage())));
+        }
+    }
+
+    /**
+     * Writes every matching user as one JSON array, row by row as they are read from
+     * the database. Errors before the first row still produce a 500; after that the
+     * status is already sent, so the connection is dropped and the client sees an
+     * unterminated chunked body rather than a well-formed but incomplete array.
+     */
+    private void streamUsers(Exchange exchange, UserQuery query) throws IOException {
+        JsonWriter[] writer = new JsonWriter[1];
+        try {
+            userService.streamUsers(query, user -> {
+                if (writer[0] == null) {
+                    writer[0] = beginJsonArray(exchange);
+                }
+                gson.toJson(user, User.class, writer[0]);
+            });
+            if (writer[0] == null) {
+                writer[0] = beginJsonArray(exchange);
+            }
+            writer[0].endArray();
+            writer[0].close();
+        } catch (Exception e) {
+            if (!exchange.isResponseStarted()) {
+                HttpServer.sendResponse(exchange, 500, 
+                    gson.toJson(Map.of("error", e.getMessage())));
+            } else {
+                exchange.abort();
+            }
+        }
+    }
+
+    private JsonWriter beginJsonArray(Exchange exchange) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                HttpServer.startChunkedResponse(exchange, 200, "application/json"), StandardCharsets.UTF_8)));
+        writer.beginArray();
+        return writer;
+    }
+
+    /**
+     * Exports matching users as CSV ({@code format=csv}, default) or NDJSON, streamed
+     * from Postgres {@code COPY}. Gzip is used when the client accepts it or asks for it
+     * with {@code gzip=true}.
+     */
+    public void exportUsers(Exchange exchange) throws IOException {
+        Map<String, String> params = HttpServer.getQueryParams(exchange);
+        UserQuery query;
+        boolean ndjson;
+        try {
+            query = parseUserQuery(params);
+            String format = params.getOrDefault("format", "csv").toLowerCase();
+            if (!format.equals("csv") && !format.equals("ndjson")) {
+                throw new IllegalArgumentException("format must be csv or ndjson");
+            }
+            ndjson = format.equals("ndjson");
+        } catch (IllegalArgumentException e) {
+            HttpServer.sendResponse(exchange, 400, 
+                gson.toJson(Map.of("error", e.getMessage())));
+            return;
+        }
+
+        String acceptEncoding = exchange.getRequestHeader("Accept-Encoding");
+        boolean gzip = "true".equalsIgnoreCase(params.get("gzip"))
+            || (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip"));
+
+        DeferredResponseStream out = new DeferredResponseStream(exchange,
+            ndjson ? "application/x-ndjson" : "text/csv; charset=utf-8",
+            "users." + (ndjson ? "ndjson" : "csv"), gzip);
+        try {
+            userService.exportUsers(query, ndjson, out);
+            out.close();
+        } catch (Exception e) {
+            if (!out.isStarted()) {
+                HttpServer.sendResponse(exchange, 500, 
+                    gson.toJson(Map.of("error", e.getMessage())));
+            } else {
+                // no terminating chunk, so consumers cannot mistake a cut-off file for a complete one
+                exchange.abort();
+            }
+        }
+    }
+
+    /**
+     * Sends the response headers on the first write, so a query that fails before
+     * producing any output can still be answered with an error status.
+     */
+    private static class DeferredResponseStream extends OutputStream {
+        private final Exchange exchange;
+        private final String contentType;
+        private final String fileName;
+        private final boolean gzip;
+        private OutputStream out;
+
+        DeferredResponseStream(Exchange exchange, String contentType, String fileName, boolean gzip) {
+            this.exchange = exchange;
+            this.contentType = contentType;
+            this.fileName = fileName;
+            this.gzip = gzip;
+        }
+
+        boolean isStarted() {
+            return out != null;
+        }
+
+        private OutputStream start() throws IOException {
+            if (out == null) {
+                exchange.addResponseHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+                if (gzip) {
+                    exchange.addResponseHeader("Content-Encoding", "gzip");
+                }
+                OutputStream body = HttpServer.startChunkedResponse(exchange, 200, contentType);
+                out = gzip ? new GZIPOutputStream(body, 64 * 1024) : new BufferedOutputStream(body, 64 * 1024);
+            }
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            start().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            start().write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            start().close();
+        }
+    }
+
+    /**
+     * Delta sync: {@code since} (the {@code cursor} of the previous response; omit for a
+     * full sync) and {@code limit} (default 500, max 1000). Keep calling while
+     * {@code hasMore} is true. A cursor older than the kept deletions gets 410.
+     */
+    public void getUserChanges(Exchange exchange) throws IOException {
+        Map<String, String> params = HttpServer.getQueryParams(exchange);
+        int limit = UserChanges.DEFAULT_LIMIT;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > UserChanges.MAX_LIMIT) {
+                HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error",
+                        "limit must be between 1 and " + UserChanges.MAX_LIMIT)));
+                return;
+            }
+        }
+
+        try {
+            UserChanges changes = userService.getUserChanges(emptyToNull(params.get("since")), limit);
+            HttpServer.sendResponse(exchange, 200, gson.toJson(changes));
+        } catch (CursorExpiredException e) {
+            HttpServer.sendResponse(exchange, 410, gson.toJson(Map.of("error", e.getMessage())));
+        } catch (IllegalArgumentException e) {
+            HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error", e.getMessage())));
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 500, 
+                gson.toJson(Map.of("error", e.getMessage())));
+        }
     }
 
-    private boolean authenticate(HttpExchange exchange) throws IOException {
+    /**
+     * Server-sent event stream of user changes: {@code user.created} and
+     * {@code user.updated} carry the user, {@code user.deleted} its id, and
+     * {@code resync} means events were missed and the client should catch up from
+     * {@link #getUserChanges}. A comment line is sent as a heartbeat when idle. The
+     * stream holds its request thread until the client disconnects or falls behind,
+     * which cuts the connection, or until its token expires or is revoked, which is
+     * checked every heartbeat interval and ends the stream so the client must
+     * reconnect with a fresh token.
+     */
+    public void streamUserEvents(Exchange exchange) throws IOException {
         String token = HttpServer.getAuthToken(exchange);
-        if (token == null) {
-            HttpServer.sendResponse(exchange, 401, 
-                gson.toJson(Map.of("error", "No authorization token provided")));
-            return false;
+        UserEventHub hub = UserEventHub.getInstance();
+        UserEventHub.Subscriber subscriber = hub.subscribe(exchange::abort);
+        if (subscriber == null) {
+            exchange.addResponseHeader("Retry-After", "5");
+            HttpServer.sendResponse(exchange, 503,
+                gson.toJson(Map.of("error", "Too many event streams")));
+            return;
+        }
+        Trace trace = Tracer.current();
+        if (trace != null) {
+            trace.markLongLived();
+        }
+
+        try {
+            exchange.addResponseHeader("Cache-Control", "no-cache");
+            exchange.addResponseHeader("X-Accel-Buffering", "no");
+            OutputStream out = HttpServer.startChunkedResponse(exchange, 200, "text/event-stream; charset=utf-8");
+            out.write("retry: 5000\n: connected\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            long nextAuthCheck = System.currentTimeMillis() + hub.getHeartbeatMs();
+            while (!subscriber.isDropped()) {
+                String frame = subscriber.poll(hub.getHeartbeatMs());
+                if (System.currentTimeMillis() >= nextAuthCheck) {
+                    if (!authService.isTokenValid(token)) {
+                        break;
+                    }
+                    nextAuthCheck = System.currentTimeMillis() + hub.getHeartbeatMs();
+                }
+                if (frame == null) {
+                    out.write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    do {
+                        out.write(frame.getBytes(StandardCharsets.UTF_8));
+                    } while ((frame = subscriber.poll()) != null);
+                }
+                out.flush();
+            }
+            if (subscriber.isDropped()) {
+                exchange.abort();
+            } else {
+                out.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            hub.unsubscribe(subscriber);
+        }
+    }
+
+    /** Typeahead: {@code q} (required) and {@code limit} (default 10, max 50); a JSON array, best match first. */
+    public void searchUsers(Exchange exchange) throws IOException {
+        Map<String, String> params = HttpServer.getQueryParams(exchange);
+        String term = params.get("q") == null ? "" : params.get("q").trim();
+        if (term.isEmpty()) {
+            HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error", "q is required")));
+            return;
+        }
+        int limit = UserSearchIndex.DEFAULT_LIMIT;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > UserSearchIndex.MAX_LIMIT) {
+                HttpServer.sendResponse(exchange, 400, gson.toJson(Map.of("error",
+                        "limit must be between 1 and " + UserSearchIndex.MAX_LIMIT)));
+                return;
+            }
         }
 
         try {
-            authService.validateToken(token);
-            return true;
+            HttpServer.sendResponse(exchange, 200, gson.toJson(userService.searchUsers(term, limit)));
         } catch (Exception e) {
-            HttpServer.sendResponse(exchange, 401, 
-                gson.toJson(Map.of("error", "Invalid or expired token")));
-            return false;
+            HttpServer.sendResponse(exchange, 500, 
+                gson.toJson(Map.of("error", e.getMessage())));
+        }
+    }
+
+    /**
+     * Parses {@code ids=1,2,3} for a multi-get: at most {@link UserQuery#MAX_LIMIT}
+     * distinct ids, kept in request order. Returns null when the parameter is absent.
+     */
+    private static List<Integer> parseIds(String value) {
+        if (value == null) {
+            return null;
+        }
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (String part : value.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            try {
+                ids.add(Integer.parseInt(part.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("ids must be comma separated numbers");
+            }
+            if (ids.size() > UserQuery.MAX_LIMIT) {
+                throw new IllegalArgumentException("At most " + UserQuery.MAX_LIMIT + " ids per request");
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private UserQuery parseUserQuery(Map<String, String> params) {
+        UserQuery query = new UserQuery();
+        query.setSort(UserQuery.Sort.fromParam(params.get("sort")));
+        if (params.containsKey("limit")) {
+            try {
+                query.setLimit(Integer.parseInt(params.get("limit")));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit must be a number");
+            }
+        }
+        query.setStatus(emptyToNull(params.get("status")));
+        query.setRole(emptyToNull(params.get("role")));
+        query.setPrefix(emptyToNull(params.get("q")));
+        String cursor = emptyToNull(params.get("cursor"));
+        if (cursor != null) {
+            query.decodeCursor(cursor);
         }
+        return query;
     }
 
-    public void getAllUsers(HttpExchange exchange) throws IOException {
-        if (!authenticate(exchange)) return;
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /** List tags combine the collection version with the query string, so each filter and page has its own. */
+    private static String listETag(Exchange exchange, long version) {
+        String query = exchange.getRawQuery();
+        return "\"users-" + version + "-" + Integer.toHexString(query == null ? 0 : query.hashCode()) + "\"";
+    }
 
+    /**
+     * {@code ?ids=} answers from the rows themselves: they are read past the cache and the
+     * tag hashes their ids and row versions, so it always describes the body sent with it
+     * and only changes when one of the requested users does.
+     */
+    private void getUsersByIds(Exchange exchange, List<Integer> ids) throws IOException {
         try {
-            List<User> users = userService.getAllUsers();
-            String response = gson.toJson(users);
-            HttpServer.sendResponse(exchange, 200, response);
+            List<User> users = userService.getUsersByIds(ids);
+            long hash = 17;
+            for (User user : users) {
+                hash = hash * 31 + user.getId();
+                hash = hash * 31 + user.getRowVersion();
+            }
+            String etag = "\"users-ids-" + Long.toHexString(hash) + "\"";
+            if (HttpServer.matchesETag(exchange, etag)) {
+                HttpServer.sendNotModified(exchange, etag);
+                return;
+            }
+            HttpServer.setETag(exchange, etag);
+            HttpServer.sendResponse(exchange, 200, gson.toJson(users));
         } catch (Exception e) {
             HttpServer.sendResponse(exchange, 500, 
                 gson.toJson(Map.of("error", e.getMessage())));
         }
     }
 
-    public void getUserById(HttpExchange exchange, int id) throws IOException {
-        if (!authenticate(exchange)) return;
+    private static String userETag(int id, long version) {
+        return "\"user-" + id + "-" + version + "\"";
+    }
 
+    public void getUserById(Exchange exchange, int id) throws IOException {
         try {
-            User user = userService.getUserById(id);
+            // the version comes from the database so a 304 is never answered from a stale cache entry
+            Long version = userService.getUserVersion(id);
+            if (version == null) {
+                throw new RuntimeException("User not found");
+            }
+            if (HttpServer.matchesETag(exchange, userETag(id, version))) {
+                HttpServer.sendNotModified(exchange, userETag(id, version));
+                return;
+            }
+
+            User user = userService.getUserById(id, version);
+            HttpServer.setETag(exchange, userETag(id, user.getRowVersion()));
             String response = gson.toJson(user);
             HttpServer.sendResponse(exchange, 200, response);
         } catch (Exception e) {
@@ -68,9 +465,7 @@ public class UserController {
         }
     }
 
-    public void createUser(HttpExchange exchange) throws IOException {
-        if (!authenticate(exchange)) return;
-
+    public void createUser(Exchange exchange) throws IOException {
         try {
             String body = HttpServer.getRequestBody(exchange);
             JsonObject json = gson.fromJson(body, JsonObject.class);
@@ -92,15 +487,65 @@ public class UserController {
             String response = gson.toJson(createdUser);
             HttpServer.sendResponse(exchange, 201, response);
             
+        } catch (OverloadedException e) {
+            exchange.addResponseHeader("Retry-After", "1");
+            HttpServer.sendResponse(exchange, 503, 
+                gson.toJson(Map.of("error", e.getMessage())));
         } catch (Exception e) {
             HttpServer.sendResponse(exchange, 400, 
                 gson.toJson(Map.of("error", e.getMessage())));
         }
     }
 
-    public void updateUser(HttpExchange exchange, int id) throws IOException {
-        if (!authenticate(exchange)) return;
+    public void bulkCreateUsers(Exchange exchange) throws IOException {
+        try {
+            String body = HttpServer.getRequestBody(exchange);
+            List<BulkUserRow> rows = bulkUserParser.parse(body,
+                exchange.getRequestHeader("Content-Type"));
+            if (rows.isEmpty()) {
+                throw new IllegalArgumentException("No users to import");
+            }
+            if (rows.size() > MAX_BULK_ROWS) {
+                throw new IllegalArgumentException("At most " + MAX_BULK_ROWS + " users can be imported at once");
+            }
+
+            userService.bulkImport(rows);
+
+            int created = 0;
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (BulkUserRow row : rows) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("line", row.getLine());
+                if (row.getUser() != null) {
+                    result.put("username", row.getUser().getUsername());
+                }
+                if (row.isFailed()) {
+                    result.put("error", row.getError());
+                } else {
+                    result.put("id", row.getCreatedId());
+                    created++;
+                }
+                results.add(result);
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("total", rows.size());
+            report.put("created", created);
+            report.put("failed", rows.size() - created);
+            report.put("results", results);
+            HttpServer.sendResponse(exchange, 200, gson.toJson(report));
 
+        } catch (OverloadedException e) {
+            exchange.addResponseHeader("Retry-After", "1");
+            HttpServer.sendResponse(exchange, 503, 
+                gson.toJson(Map.of("error", e.getMessage())));
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 400, 
+                gson.toJson(Map.of("error", e.getMessage())));
+        }
+    }
+
+    public void updateUser(Exchange exchange, int id) throws IOException {
         try {
             String body = HttpServer.getRequestBody(exchange);
             JsonObject json = gson.fromJson(body, JsonObject.class);
@@ -120,9 +565,7 @@ public class UserController {
         }
     }
 
-    public void deleteUser(HttpExchange exchange, int id) throws IOException {
-        if (!authenticate(exchange)) return;
-
+    public void deleteUser(Exchange exchange, int id) throws IOException {
         try {
             userService.deleteUser(id);
             HttpServer.sendResponse(exchange, 204, "");
@@ -0,0 +1,142 @@
+package com.wms.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets: eight sub-buckets per power of
+ * two nanoseconds. Quantiles report the bucket midpoint, within about 6% of the true value.
+ * Recording is one array increment plus two adders. Quantiles cover the current and
+ * previous window (see {@code metrics.windowMs}) so they follow recent load; count and
+ * sum are cumulative, as Prometheus expects.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BITS - 1) * SUB_BUCKETS + 1;
+
+    private final long windowNanos;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private volatile Window current;
+    private volatile Window previous;
+
+    private static final class Window {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final long startedAt;
+
+        Window(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+
+    LatencyHistogram(long windowMs) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        long now = System.nanoTime();
+        this.current = new Window(now);
+        this.previous = new Window(now);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value. */
+    public void recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos, now);
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos, System.nanoTime());
+    }
+
+    private void record(long nanos, long now) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.increment();
+        sumNanos.add(nanos);
+        window(now).counts.incrementAndGet(bucketOf(nanos));
+    }
+
+    private Window window(long now) {
+        Window window = current;
+        if (now - window.startedAt < windowNanos) {
+            return window;
+        }
+        synchronized (this) {
+            window = current;
+            if (now - window.startedAt >= windowNanos) {
+                previous = now - window.startedAt < 2 * windowNanos ? window : new Window(now);
+                window = new Window(now);
+                current = window;
+            }
+            return window;
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /**
+     * Estimated quantiles in seconds over the recent windows, in the order requested;
+     * all zero if nothing was recorded.
+     */
+    public double[] getQuantilesSeconds(double... quantiles) {
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        Window latest = window(System.nanoTime());
+        Window earlier = previous;
+        for (int i = 0; i < BUCKETS; i++) {
+            merged[i] = latest.counts.get(i) + (earlier != latest ? earlier.counts.get(i) : 0);
+            total += merged[i];
+        }
+
+        double[] values = new double[quantiles.length];
+        if (total == 0) {
+            return values;
+        }
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            long seen = 0;
+            int bucket = 0;
+            while (bucket < BUCKETS - 1 && (seen += merged[bucket]) < rank) {
+                bucket++;
+            }
+            values[q] = midpoint(bucket) / 1e9;
+        }
+        return values;
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR_LIMIT) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static double midpoint(int bucket) {
+        long lower = bucket == 0 ? 0 : upperBound(bucket - 1);
+        return (lower + upperBound(bucket)) / 2.0;
+    }
+
+    /** Exclusive upper bound of a bucket in nanoseconds; each bucket starts where the previous ends. */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket + 1;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BITS + 1;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS);
+    }
+}
@@ -0,0 +1,190 @@
+package com.wms.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide metric registry rendered in the Prometheus text format by
+ * {@link #writePrometheus(Writer)}. Components look up their counters and histograms
+ * once and keep the reference, so the hot path never touches the registry; gauges and
+ * function counters are read from the owning component only at scrape time.
+ * Labels are passed as alternating name/value pairs.
+ */
+public class Metrics {
+    private static volatile Metrics instance;
+
+    static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    private boolean enabled;
+    private String permission;
+    private long windowMs;
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private Metrics() {
+        loadProperties();
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.enabled = Boolean.parseBoolean(prop.getProperty("metrics.enabled", "false").trim());
+            this.permission = prop.getProperty("metrics.permission", "system.admin").trim();
+            this.windowMs = Long.parseLong(prop.getProperty("metrics.windowMs", "60000").trim());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load metrics configuration", e);
+        }
+    }
+
+    public static Metrics getInstance() {
+        if (instance == null) {
+            synchronized (Metrics.class) {
+                if (instance == null) {
+                    instance = new Metrics();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Whether {@code GET /metrics} is served. Collection itself is always on. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Permission a caller needs to read {@code GET /metrics}. */
+    public String getPermission() {
+        return permission;
+    }
+
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, Type.COUNTER).series
+                .computeIfAbsent(labelKey(labels), k -> new LongAdder());
+    }
+
+    /** A counter kept by its owner, e.g. a pool's rejection count, read at scrape time. */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).series.put(labelKey(labels), value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series.put(labelKey(labels), value);
+    }
+
+    /** Latency summary in seconds with p50, p99 and p999. */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, Type.SUMMARY).series
+                .computeIfAbsent(labelKey(labels), k -> new LatencyHistogram(windowMs));
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type.text);
+        }
+        return family;
+    }
+
+    private static String labelKey(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    key.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    key.append("\\n");
+                } else {
+                    key.append(ch);
+                }
+            }
+            key.append('"');
+        }
+        return key.toString();
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        for (Family family : new TreeMap<>(families).values()) {
+            out.write("# HELP " + family.name + " " + family.help + "\n");
+            out.write("# TYPE " + family.name + " " + family.type.text + "\n");
+            for (Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+                writeSeries(out, family.name, series.getKey(), series.getValue());
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeSeries(Writer out, String name, String labels, Object metric) throws IOException {
+        if (metric instanceof LongAdder) {
+            sample(out, name, labels, null, ((LongAdder) metric).sum());
+        } else if (metric instanceof DoubleSupplier) {
+            sample(out, name, labels, null, ((DoubleSupplier) metric).getAsDouble());
+        } else {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            double[] values = histogram.getQuantilesSeconds(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                sample(out, name, labels, "quantile=\"" + QUANTILES[i] + "\"", values[i]);
+            }
+            sample(out, name + "_sum", labels, null, histogram.getSumSeconds());
+            sample(out, name + "_count", labels, null, histogram.getCount());
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, String extra, double value)
+            throws IOException {
+        out.write(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.write('{');
+            out.write(labels);
+            if (extra != null) {
+                out.write(labels.isEmpty() ? extra : "," + extra);
+            }
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value));
+        out.write('\n');
+    }
+}
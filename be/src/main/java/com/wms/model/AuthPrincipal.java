@@ -0,0 +1,66 @@
+package com.wms.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class AuthPrincipal {
+    private final Integer userId;
+    private final String username;
+    private final List<String> roles;
+    private final Integer statusId;
+    private final long version;
+
+    public AuthPrincipal(Integer userId, String username, List<String> roles, Integer statusId, long version) {
+        this.userId = userId;
+        this.username = username;
+        this.roles = Collections.unmodifiableList(roles);
+        this.statusId = statusId;
+        this.version = version;
+    }
+
+    public static AuthPrincipal fromUser(User user) {
+        return new AuthPrincipal(
+                user.getId(),
+                user.getUsername(),
+                splitNames(user.getRoles()),
+                user.getStatusId(),
+                versionOf(user));
+    }
+
+    public static long versionOf(User user) {
+        return user.getUpdatedAt() != null ? user.getUpdatedAt().getTime() : 0L;
+    }
+
+    /** Splits the comma separated role/permission lists produced by {@code ums.user_view}. */
+    public static List<String> splitNames(String names) {
+        if (names == null || names.isBlank()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(names.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public Integer getStatusId() {
+        return statusId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,85 @@
+package com.wms.model;
+
+import java.util.List;
+
+/**
+ * One line of a bulk user import, carrying its outcome once processed.
+ */
+public class BulkUserRow {
+    private final int line;
+    private User user;
+    private String password;
+    private List<String> roleNames;
+    private String passwordHash;
+    private List<Integer> roleIds;
+    private Integer createdId;
+    private String error;
+
+    public BulkUserRow(int line) {
+        this.line = line;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public List<String> getRoleNames() {
+        return roleNames;
+    }
+
+    public void setRoleNames(List<String> roleNames) {
+        this.roleNames = roleNames;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+    }
+
+    public List<Integer> getRoleIds() {
+        return roleIds;
+    }
+
+    public void setRoleIds(List<Integer> roleIds) {
+        this.roleIds = roleIds;
+    }
+
+    public Integer getCreatedId() {
+        return createdId;
+    }
+
+    public void setCreatedId(Integer createdId) {
+        this.createdId = createdId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+}
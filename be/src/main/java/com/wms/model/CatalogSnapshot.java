@@ -0,0 +1,119 @@
+package com.wms.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable view of {@code ums.roles}, {@code ums.permissions} and
+ * {@code ums.role_permissions} at one point in time.
+ */
+public class CatalogSnapshot {
+    private final Map<String, Integer> roleIds;
+    private final Map<String, Integer> permissionIds;
+    private final Map<String, Set<String>> rolePermissions;
+    private final Map<String, Integer> permissionBits;
+    private final Map<String, PermissionMask> roleMasks;
+    private final Map<List<String>, PermissionMask> roleSetMasks = new ConcurrentHashMap<>();
+    private final long loadedAt;
+
+    public CatalogSnapshot(Map<String, Integer> roleIds, Map<String, Integer> permissionIds,
+                           Map<String, Set<String>> rolePermissions) {
+        this.roleIds = Collections.unmodifiableMap(new LinkedHashMap<>(roleIds));
+        this.permissionIds = Collections.unmodifiableMap(new LinkedHashMap<>(permissionIds));
+        Map<String, Set<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : rolePermissions.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(entry.getValue())));
+        }
+        this.rolePermissions = Collections.unmodifiableMap(copy);
+
+        Map<String, Integer> bits = new LinkedHashMap<>();
+        for (String permission : permissionIds.keySet()) {
+            bits.put(permission, bits.size());
+        }
+        this.permissionBits = Collections.unmodifiableMap(bits);
+
+        Map<String, PermissionMask> masks = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : this.rolePermissions.entrySet()) {
+            masks.put(entry.getKey(), PermissionMask.of(entry.getValue().stream()
+                    .map(bits::get).filter(bit -> bit != null).mapToInt(Integer::intValue).toArray()));
+        }
+        this.roleMasks = Collections.unmodifiableMap(masks);
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    public Integer getRoleId(String roleName) {
+        return roleIds.get(roleName);
+    }
+
+    /** Ids of the named roles that exist, in the given order; unknown names are skipped. */
+    public List<Integer> getRoleIds(Collection<String> roleNames) {
+        List<Integer> ids = new ArrayList<>();
+        if (roleNames != null) {
+            for (String roleName : roleNames) {
+                Integer id = roleIds.get(roleName);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    public Integer getPermissionId(String permissionName) {
+        return permissionIds.get(permissionName);
+    }
+
+    public Set<String> getPermissions(String roleName) {
+        return rolePermissions.getOrDefault(roleName, Collections.emptySet());
+    }
+
+    public Set<String> getPermissions(Collection<String> roleNames) {
+        Set<String> permissions = new LinkedHashSet<>();
+        for (String roleName : roleNames) {
+            permissions.addAll(getPermissions(roleName));
+        }
+        return permissions;
+    }
+
+    /** Bit assigned to {@code permissionName} in this snapshot's masks, or -1 if unknown. */
+    public int getPermissionBit(String permissionName) {
+        Integer bit = permissionBits.get(permissionName);
+        return bit == null ? -1 : bit;
+    }
+
+    /**
+     * Union of the permissions granted by {@code roleNames}. Users share a handful of
+     * role combinations, so each combination is compiled once per snapshot.
+     */
+    public PermissionMask getPermissionMask(List<String> roleNames) {
+        return roleSetMasks.computeIfAbsent(roleNames, roles -> {
+            PermissionMask mask = PermissionMask.EMPTY;
+            for (String role : roles) {
+                PermissionMask roleMask = roleMasks.get(role);
+                if (roleMask != null) {
+                    mask = mask.or(roleMask);
+                }
+            }
+            return mask;
+        });
+    }
+
+    public Map<String, Integer> getRoleIds() {
+        return roleIds;
+    }
+
+    public Map<String, Integer> getPermissionIds() {
+        return permissionIds;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+}
@@ -0,0 +1,61 @@
+package com.wms.model;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of permissions compiled to a bitset, one bit per permission in
+ * {@link CatalogSnapshot} order. Membership checks are a single word lookup.
+ */
+public final class PermissionMask {
+    public static final PermissionMask EMPTY = new PermissionMask(new long[0]);
+
+    private final long[] words;
+
+    private PermissionMask(long[] words) {
+        this.words = words;
+    }
+
+    public static PermissionMask of(int... bits) {
+        int max = -1;
+        for (int bit : bits) {
+            max = Math.max(max, bit);
+        }
+        long[] words = new long[(max >> 6) + 1];
+        for (int bit : bits) {
+            words[bit >> 6] |= 1L << bit;
+        }
+        return new PermissionMask(words);
+    }
+
+    public boolean contains(int bit) {
+        int word = bit >> 6;
+        return bit >= 0 && word < words.length && (words[word] & (1L << bit)) != 0;
+    }
+
+    public boolean containsAll(PermissionMask other) {
+        for (int i = 0; i < other.words.length; i++) {
+            long mine = i < words.length ? words[i] : 0L;
+            if ((other.words[i] & ~mine) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public PermissionMask or(PermissionMask other) {
+        long[] merged = Arrays.copyOf(words, Math.max(words.length, other.words.length));
+        for (int i = 0; i < other.words.length; i++) {
+            merged[i] |= other.words[i];
+        }
+        return new PermissionMask(merged);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
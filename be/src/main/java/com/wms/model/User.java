@@ -14,6 +14,7 @@ public class User {
     private String permissions;
     private Timestamp createdAt;
     private Timestamp updatedAt;
+    private transient long rowVersion;
 
     public User() {}
 
@@ -119,5 +120,13 @@ public class User {
     public void setUpdatedAt(Timestamp updatedAt) {
         this.updatedAt = updatedAt;
     }
-}
 
+    /** Read model row version, bumped on every change to the user; not serialized. */
+    public long getRowVersion() {
+        return rowVersion;
+    }
+
+    public void setRowVersion(long rowVersion) {
+        this.rowVersion = rowVersion;
+    }
+}
@@ -0,0 +1,130 @@
+package com.wms.model;
+
+import com.wms.util.CursorExpiredException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One batch of the user change feed: users written and users deleted after a cursor,
+ * and the cursor to pass next time. Changes are ordered by (change version, user id);
+ * a user appears at most once, as its latest state or as a deletion. A full sync (no
+ * cursor) leaves deletions out, since the client holds none of those users.
+ */
+public class UserChanges {
+    public static final int DEFAULT_LIMIT = 500;
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String CURSOR_FORMAT = "2";
+    private static final String EXPIRED_MESSAGE = "Cursor expired; start over without since";
+
+    private final List<User> changed;
+    private final List<Integer> deleted;
+    private final String cursor;
+    private final boolean hasMore;
+
+    public UserChanges(List<User> changed, List<Integer> deleted, String cursor, boolean hasMore) {
+        this.changed = changed;
+        this.deleted = deleted;
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Merges up to {@code limit + 1} changed users and deleted ids, each already in
+     * (version, id) order, into a batch of at most {@code limit} entries. The cursor
+     * points at the last entry taken, or stays at the given position when there is none.
+     */
+    public static UserChanges merge(List<User> users, List<Long> userVersions,
+                                    List<Integer> deletedIds, List<Long> deletedVersions,
+                                    int limit, long afterVersion, int afterId) {
+        List<User> changed = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        long version = afterVersion;
+        int id = afterId;
+        int u = 0;
+        int d = 0;
+        while (changed.size() + deleted.size() < limit && (u < users.size() || d < deletedIds.size())) {
+            boolean takeUser = d >= deletedIds.size() || (u < users.size()
+                    && compare(userVersions.get(u), users.get(u).getId(), deletedVersions.get(d), deletedIds.get(d)) < 0);
+            if (takeUser) {
+                version = userVersions.get(u);
+                id = users.get(u).getId();
+                changed.add(users.get(u++));
+            } else {
+                version = deletedVersions.get(d);
+                id = deletedIds.get(d);
+                deleted.add(deletedIds.get(d++));
+            }
+        }
+        boolean hasMore = u < users.size() || d < deletedIds.size();
+        return new UserChanges(changed, deleted, encodeCursor(version, id), hasMore);
+    }
+
+    private static int compare(long version, int id, long otherVersion, int otherId) {
+        int byVersion = Long.compare(version, otherVersion);
+        return byVersion != 0 ? byVersion : Integer.compare(id, otherId);
+    }
+
+    public static String encodeCursor(long version, int id) {
+        String raw = CURSOR_FORMAT + ":" + version + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns {version, id}; an empty or null cursor means from the beginning. Cursors
+     * from before versions became transaction ids have no format prefix and are expired.
+     */
+    public static long[] decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return new long[] {0L, 0L};
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (parts.length == 2) {
+            throw new CursorExpiredException(EXPIRED_MESSAGE);
+        }
+        try {
+            if (parts.length != 3 || !parts[0].equals(CURSOR_FORMAT)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new long[] {Long.parseLong(parts[1]), Integer.parseInt(parts[2])};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Rejects a cursor at or before {@code prunedThrough}, the newest version of a
+     * tombstone already dropped: deletes after the cursor may be missing.
+     */
+    public static void checkNotExpired(long afterVersion, int afterId, long prunedThrough) {
+        if ((afterVersion != 0 || afterId != 0) && afterVersion <= prunedThrough) {
+            throw new CursorExpiredException(EXPIRED_MESSAGE);
+        }
+    }
+
+    public List<User> getChanged() {
+        return changed;
+    }
+
+    public List<Integer> getDeleted() {
+        return deleted;
+    }
+
+    /** Pass as {@code since} on the next call. */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /** Whether more changes are already available past {@link #getCursor()}. */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,22 @@
+package com.wms.model;
+
+import java.util.List;
+
+public class UserPage {
+    private final List<User> users;
+    private final String nextCursor;
+
+    public UserPage(List<User> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /** Cursor for the following page, or null when this is the last one. */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
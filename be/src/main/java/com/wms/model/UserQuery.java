@@ -0,0 +1,156 @@
+package com.wms.model;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * Filters, sort order and keyset position for a page of the user list.
+ */
+public class UserQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    public enum Sort {
+        CREATED_DESC("created_desc"),
+        CREATED_ASC("created_asc"),
+        USERNAME_ASC("username_asc"),
+        USERNAME_DESC("username_desc");
+
+        private final String param;
+
+        Sort(String param) {
+            this.param = param;
+        }
+
+        public String getParam() {
+            return param;
+        }
+
+        public boolean isDescending() {
+            return this == CREATED_DESC || this == USERNAME_DESC;
+        }
+
+        public boolean isByUsername() {
+            return this == USERNAME_ASC || this == USERNAME_DESC;
+        }
+
+        public static Sort fromParam(String value) {
+            if (value == null || value.isEmpty()) {
+                return CREATED_DESC;
+            }
+            for (Sort sort : values()) {
+                if (sort.param.equalsIgnoreCase(value)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sort: " + value);
+        }
+    }
+
+    private String status;
+    private String role;
+    private String prefix;
+    private Sort sort = Sort.CREATED_DESC;
+    private int limit = DEFAULT_LIMIT;
+
+    private Timestamp afterCreatedAt;
+    private String afterUsername;
+    private Integer afterId;
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public void setSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        this.limit = Math.min(limit, MAX_LIMIT);
+    }
+
+    public Timestamp getAfterCreatedAt() {
+        return afterCreatedAt;
+    }
+
+    public String getAfterUsername() {
+        return afterUsername;
+    }
+
+    public Integer getAfterId() {
+        return afterId;
+    }
+
+    public boolean hasCursor() {
+        return afterId != null;
+    }
+
+    /**
+     * Encodes the keyset position after {@code user} as an opaque cursor. Timestamps keep
+     * their nanos so rows created in the same millisecond are neither skipped nor repeated.
+     */
+    public String encodeCursor(User user) {
+        String raw;
+        if (sort.isByUsername()) {
+            raw = sort.getParam() + "|" + user.getId() + "|" + user.getUsername();
+        } else {
+            Timestamp createdAt = user.getCreatedAt();
+            raw = sort.getParam() + "|" + user.getId() + "|"
+                    + Math.floorDiv(createdAt.getTime(), 1000) + "." + createdAt.getNanos();
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3 || Sort.fromParam(parts[0]) != sort) {
+                throw new IllegalArgumentException("Cursor does not match sort order");
+            }
+            this.afterId = Integer.parseInt(parts[1]);
+            if (sort.isByUsername()) {
+                this.afterUsername = parts[2];
+            } else {
+                String[] time = parts[2].split("\\.");
+                Timestamp createdAt = new Timestamp(Long.parseLong(time[0]) * 1000);
+                createdAt.setNanos(Integer.parseInt(time[1]));
+                this.afterCreatedAt = createdAt;
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
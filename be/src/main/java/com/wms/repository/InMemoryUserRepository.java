@@ -0,0 +1,756 @@
+package com.wms.repository;
+
+import com.google.gson.stream.JsonWriter;
+import com.wms.model.BulkUserRow;
+import com.wms.model.CatalogSnapshot;
+import com.wms.model.User;
+import com.wms.model.UserChanges;
+import com.wms.model.UserPage;
+import com.wms.model.UserQuery;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Users held in memory, for load tests and deployments without Postgres. Rows live in a
+ * primary-key map with concurrent secondary indexes: unique username and email, user
+ * ids by status and by role, and sorted keys for the list's created-at and username
+ * orders. Reads take no locks; writes are serialized so unique checks and index
+ * updates stay consistent. Statuses, roles and permissions are the database seed data,
+ * and users carry aggregated role/permission names just like the read model.
+ */
+public class InMemoryUserRepository implements UserRepository, RoleRepository {
+    private static volatile InMemoryUserRepository instance;
+
+    private static final Map<Integer, String> STATUSES = Map.of(
+            1, "active", 2, "inactive", 3, "locked", 4, "pending");
+
+    private final CatalogSnapshot catalog;
+    private final Map<Integer, String> roleNames = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Row> rows = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byUsername = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byEmail = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> byStatus = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> byRole = new ConcurrentHashMap<>();
+    private final NavigableSet<SortKey> byCreated = new ConcurrentSkipListSet<>();
+    private final NavigableSet<SortKey> byUsernameOrder = new ConcurrentSkipListSet<>();
+    /** Row version to user id for live rows, and deletion version to tombstone for deleted ones. */
+    private final NavigableMap<Long, Integer> byRowVersion = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, Tombstone> tombstones = new ConcurrentSkipListMap<>();
+    private volatile long tombstonesPrunedThrough;
+
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final AtomicLong rowVersions = new AtomicLong();
+    private final AtomicLong collectionVersion = new AtomicLong();
+    private final Object writeLock = new Object();
+
+    /** Tombstones are kept as long as the database keeps them by default. */
+    private static final long TOMBSTONE_RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+
+    /** Stored user: the view returned to callers (copied on the way out) plus write-side data. */
+    private static final class Row {
+        final User view;
+        final String passwordHash;
+        final List<Integer> roleIds;
+
+        Row(User view, String passwordHash, List<Integer> roleIds) {
+            this.view = view;
+            this.passwordHash = passwordHash;
+            this.roleIds = roleIds;
+        }
+    }
+
+    private static final class Tombstone {
+        final int id;
+        final long deletedAt;
+
+        Tombstone(int id, long deletedAt) {
+            this.id = id;
+            this.deletedAt = deletedAt;
+        }
+    }
+
+    /** Sort position of a user; created_at and username never change after insert. */
+    private static final class SortKey implements Comparable<SortKey> {
+        final Timestamp createdAt;
+        final String username;
+        final int id;
+
+        SortKey(Timestamp createdAt, String username, int id) {
+            this.createdAt = createdAt;
+            this.username = username;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int c = createdAt != null ? createdAt.compareTo(other.createdAt) : username.compareTo(other.username);
+            return c != 0 ? c : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SortKey && compareTo((SortKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    private InMemoryUserRepository() {
+        this.catalog = seedCatalog();
+        catalog.getRoleIds().forEach((name, id) -> roleNames.put(id, name));
+        seedUsers();
+    }
+
+    public static InMemoryUserRepository getInstance() {
+        if (instance == null) {
+            synchronized (InMemoryUserRepository.class) {
+                if (instance == null) {
+                    instance = new InMemoryUserRepository();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Mirrors {@code db/changelog/004-seed-data.sql}. */
+    private static CatalogSnapshot seedCatalog() {
+        Map<String, Integer> roleIds = new LinkedHashMap<>();
+        String[] roles = {"supervisor", "operator", "manager", "client"};
+        for (int i = 0; i < roles.length; i++) {
+            roleIds.put(roles[i], i + 1);
+        }
+
+        Map<String, Integer> permissionIds = new LinkedHashMap<>();
+        String[] permissions = {"user.create", "user.read", "user.update", "user.delete", "role.assign",
+                "role.manage", "system.admin", "system.settings", "data.export", "data.import"};
+        for (int i = 0; i < permissions.length; i++) {
+            permissionIds.put(permissions[i], i + 1);
+        }
+
+        Map<String, Set<String>> rolePermissions = new LinkedHashMap<>();
+        rolePermissions.put("supervisor", new LinkedHashSet<>(permissionIds.keySet()));
+        rolePermissions.put("operator", new LinkedHashSet<>(List.of("user.read", "data.export")));
+        rolePermissions.put("manager", new LinkedHashSet<>(
+                List.of("user.read", "user.update", "role.assign", "data.export", "data.import")));
+        rolePermissions.put("client", new LinkedHashSet<>(List.of("user.read")));
+        return new CatalogSnapshot(roleIds, permissionIds, rolePermissions);
+    }
+
+    private void seedUsers() {
+        List<Integer> supervisor = List.of(catalog.getRoleId("supervisor"));
+        User admin = new User();
+        admin.setUsername("admin");
+        admin.setEmail("admin@wms.com");
+        admin.setFullName("Administrator");
+        admin.setStatusId(1);
+        User viet = new User();
+        viet.setUsername("viet");
+        viet.setEmail("viet@wms.com");
+        viet.setFullName("Viet Nguyen");
+        viet.setStatusId(1);
+        try {
+            create(admin, "$2a$10$rZL3Kq0oJHxhXqJQj7K3ue8B5VqE6XZwH7O1g2HZzVx0J0Yz8y6f2", supervisor);
+            create(viet, "$2a$10$YpW8K3dJ7H1xXqZQj8K4ue9C6VrF7YAwI8P2h3IZAWy1K1ZA9z7g3", supervisor);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to seed in-memory users", e);
+        }
+    }
+
+    @Override
+    public CatalogSnapshot loadCatalog() {
+        return catalog;
+    }
+
+    @Override
+    public User findByUsername(String username) {
+        Integer id = byUsername.get(username);
+        Row row = id == null ? null : rows.get(id);
+        if (row == null) {
+            return null;
+        }
+        User user = copyOf(row.view);
+        user.setPasswordHash(row.passwordHash);
+        return user;
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> users = new ArrayList<>(rows.size());
+        for (SortKey key : byCreated.descendingSet()) {
+            Row row = rows.get(key.id);
+            if (row != null) {
+                users.add(copyOf(row.view));
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public UserPage findPage(UserQuery query) {
+        List<User> users = new ArrayList<>();
+        Iterator<User> matches = iterate(query);
+        while (matches.hasNext() && users.size() <= query.getLimit()) {
+            users.add(matches.next());
+        }
+
+        String nextCursor = null;
+        if (users.size() > query.getLimit()) {
+            users.remove(users.size() - 1);
+            nextCursor = query.encodeCursor(users.get(users.size() - 1));
+        }
+        return new UserPage(users, nextCursor);
+    }
+
+    @Override
+    public void streamAll(UserQuery query, UserRowHandler handler) throws IOException {
+        Iterator<User> matches = iterate(query);
+        while (matches.hasNext()) {
+            handler.accept(matches.next());
+        }
+    }
+
+    /** Same columns and formats as the Postgres {@code COPY} export. */
+    @Override
+    public long exportCopy(UserQuery query, boolean ndjson, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (!ndjson) {
+            writer.write("id,username,email,fullName,statusId,statusName,roles,permissions,createdAt,updatedAt\n");
+        }
+
+        long count = 0;
+        Iterator<User> matches = iterate(query);
+        while (matches.hasNext()) {
+            User user = matches.next();
+            if (ndjson) {
+                writeJson(writer, user);
+            } else {
+                writeCsv(writer, user);
+            }
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeJson(Writer writer, User user) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.setSerializeNulls(true);
+        json.beginObject();
+        json.name("id").value(user.getId());
+        json.name("username").value(user.getUsername());
+        json.name("email").value(user.getEmail());
+        json.name("fullName").value(user.getFullName());
+        json.name("statusId").value(user.getStatusId());
+        json.name("statusName").value(user.getStatusName());
+        json.name("roles").value(user.getRoles());
+        json.name("permissions").value(user.getPermissions());
+        json.name("createdAt").value(isoTime(user.getCreatedAt()));
+        json.name("updatedAt").value(isoTime(user.getUpdatedAt()));
+        json.endObject();
+        json.flush();
+        writer.write('\n');
+    }
+
+    private static String isoTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime().toString();
+    }
+
+    private static void writeCsv(Writer writer, User user) throws IOException {
+        Object[] values = {user.getId(), user.getUsername(), user.getEmail(), user.getFullName(),
+                user.getStatusId(), user.getStatusName(), user.getRoles(), user.getPermissions(),
+                user.getCreatedAt(), user.getUpdatedAt()};
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] == null) {
+                continue;
+            }
+            String value = values[i].toString();
+            if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write('\n');
+    }
+
+    @Override
+    public int rebuildReadModel() {
+        synchronized (writeLock) {
+            for (Row row : new ArrayList<>(rows.values())) {
+                User view = copyOf(row.view);
+                applyRoles(view, row.roleIds);
+                replace(row, new Row(view, row.passwordHash, row.roleIds));
+            }
+            collectionVersion.incrementAndGet();
+            return rows.size();
+        }
+    }
+
+    @Override
+    public Long findRowVersion(int id) {
+        Row row = rows.get(id);
+        return row == null ? null : row.view.getRowVersion();
+    }
+
+    @Override
+    public long getCollectionVersion() {
+        return collectionVersion.get();
+    }
+
+    /**
+     * Row versions double as change versions: writes are serialized, so they are
+     * handed out in the order the changes become visible.
+     */
+    @Override
+    public UserChanges findChanges(long afterVersion, int afterId, int limit) {
+        List<User> users = new ArrayList<>();
+        List<Long> userVersions = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : byRowVersion.tailMap(afterVersion, false).entrySet()) {
+            Row row = rows.get(entry.getValue());
+            // a row rewritten or deleted since shows up again under its newer version
+            if (row != null && row.view.getRowVersion() == entry.getKey()) {
+                users.add(copyOf(row.view));
+                userVersions.add(entry.getKey());
+                if (users.size() > limit) {
+                    break;
+                }
+            }
+        }
+        List<Integer> deletedIds = new ArrayList<>();
+        List<Long> deletedVersions = new ArrayList<>();
+        boolean fullSync = afterVersion == 0 && afterId == 0;
+        if (!fullSync) {
+            for (Map.Entry<Long, Tombstone> entry : tombstones.tailMap(afterVersion, false).entrySet()) {
+                deletedIds.add(entry.getValue().id);
+                deletedVersions.add(entry.getKey());
+                if (deletedIds.size() > limit) {
+                    break;
+                }
+            }
+        }
+        UserChanges.checkNotExpired(afterVersion, afterId, tombstonesPrunedThrough);
+        return UserChanges.merge(users, userVersions, deletedIds, deletedVersions, limit, afterVersion, afterId);
+    }
+
+    @Override
+    public User findById(int id) {
+        Row row = rows.get(id);
+        return row == null ? null : copyOf(row.view);
+    }
+
+    @Override
+    public List<User> findByIds(Collection<Integer> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            Row row = id == null ? null : rows.get(id);
+            if (row != null) {
+                users.add(copyOf(row.view));
+            }
+        }
+        return users;
+    }
+
+    /** Substring match only, by scanning every user; username prefix matches come first. */
+    @Override
+    public List<User> search(String term, int limit) {
+        String needle = term.toLowerCase();
+        List<User> prefixed = new ArrayList<>();
+        List<User> containing = new ArrayList<>();
+        for (SortKey key : byUsernameOrder) {
+            Row row = rows.get(key.id);
+            if (row == null) {
+                continue;
+            }
+            User view = row.view;
+            if (view.getUsername().toLowerCase().startsWith(needle)) {
+                prefixed.add(view);
+            } else if (containing.size() < limit && (view.getUsername().toLowerCase().contains(needle)
+                    || view.getEmail().toLowerCase().contains(needle)
+                    || (view.getFullName() != null && view.getFullName().toLowerCase().contains(needle)))) {
+                containing.add(view);
+            }
+            if (prefixed.size() >= limit) {
+                break;
+            }
+        }
+        List<User> users = new ArrayList<>(limit);
+        for (User view : prefixed) {
+            users.add(copyOf(view));
+        }
+        for (int i = 0; i < containing.size() && users.size() < limit; i++) {
+            users.add(copyOf(containing.get(i)));
+        }
+        return users;
+    }
+
+    @Override
+    public User create(User user, String passwordHash, List<Integer> roleIds) throws SQLException {
+        synchronized (writeLock) {
+            checkStatus(user.getStatusId());
+            checkUnique(user.getUsername(), user.getEmail(), null);
+            List<Integer> roles = checkRoles(roleIds);
+            Row row = insert(user, passwordHash, roles);
+            collectionVersion.incrementAndGet();
+            return copyOf(row.view);
+        }
+    }
+
+    @Override
+    public User update(int id, User user) throws SQLException {
+        synchronized (writeLock) {
+            Row current = rows.get(id);
+            if (current == null) {
+                return null;
+            }
+            checkStatus(user.getStatusId());
+            checkUnique(null, user.getEmail(), id);
+
+            User view = copyOf(current.view);
+            view.setEmail(user.getEmail());
+            view.setFullName(user.getFullName());
+            view.setStatusId(user.getStatusId());
+            view.setStatusName(STATUSES.get(user.getStatusId()));
+            view.setUpdatedAt(now());
+            replace(current, new Row(view, current.passwordHash, current.roleIds));
+            collectionVersion.incrementAndGet();
+            return copyOf(view);
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        synchronized (writeLock) {
+            Row row = rows.remove(id);
+            if (row == null) {
+                return false;
+            }
+            unindex(row);
+            byCreated.remove(new SortKey(row.view.getCreatedAt(), null, id));
+            byUsernameOrder.remove(new SortKey(null, row.view.getUsername(), id));
+            long now = System.currentTimeMillis();
+            tombstones.put(rowVersions.incrementAndGet(), new Tombstone(id, now));
+            pruneTombstones(now);
+            byRowVersion.remove(row.view.getRowVersion());
+            collectionVersion.incrementAndGet();
+            return true;
+        }
+    }
+
+    /** Drops tombstones past retention, oldest first; called under the write lock. */
+    private void pruneTombstones(long now) {
+        Map.Entry<Long, Tombstone> oldest;
+        while ((oldest = tombstones.firstEntry()) != null && oldest.getValue().deletedAt < now - TOMBSTONE_RETENTION_MS) {
+            tombstonesPrunedThrough = oldest.getKey();
+            tombstones.remove(oldest.getKey());
+        }
+    }
+
+    @Override
+    public void bulkCreate(List<BulkUserRow> batch) {
+        synchronized (writeLock) {
+            boolean inserted = false;
+            for (BulkUserRow bulkRow : batch) {
+                if (bulkRow.isFailed()) {
+                    continue;
+                }
+                User user = bulkRow.getUser();
+                if (!STATUSES.containsKey(user.getStatusId())) {
+                    bulkRow.setError("Unknown status id: " + user.getStatusId());
+                    continue;
+                }
+                if (byUsername.containsKey(user.getUsername()) || byEmail.containsKey(user.getEmail())) {
+                    bulkRow.setError("Username or email already exists");
+                    continue;
+                }
+                List<Integer> roles = new ArrayList<>();
+                if (bulkRow.getRoleIds() != null) {
+                    for (Integer roleId : bulkRow.getRoleIds()) {
+                        if (roleNames.containsKey(roleId) && !roles.contains(roleId)) {
+                            roles.add(roleId);
+                        }
+                    }
+                }
+                Row row = insert(user, bulkRow.getPasswordHash(), roles);
+                bulkRow.setCreatedId(row.view.getId());
+                inserted = true;
+            }
+            if (inserted) {
+                collectionVersion.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    private Row insert(User user, String passwordHash, List<Integer> roleIds) {
+        Timestamp now = now();
+        User view = new User();
+        view.setId(nextId.getAndIncrement());
+        view.setUsername(user.getUsername());
+        view.setEmail(user.getEmail());
+        view.setFullName(user.getFullName());
+        view.setStatusId(user.getStatusId());
+        view.setStatusName(STATUSES.get(user.getStatusId()));
+        view.setCreatedAt(now);
+        view.setUpdatedAt(now);
+        applyRoles(view, roleIds);
+        view.setRowVersion(rowVersions.incrementAndGet());
+
+        Row row = new Row(view, passwordHash, Collections.unmodifiableList(new ArrayList<>(roleIds)));
+        rows.put(view.getId(), row);
+        byRowVersion.put(view.getRowVersion(), view.getId());
+        index(row);
+        byCreated.add(new SortKey(now, null, view.getId()));
+        byUsernameOrder.add(new SortKey(null, view.getUsername(), view.getId()));
+        return row;
+    }
+
+    /**
+     * Swaps a row for its new version. Only the index entries whose key changed are
+     * moved, and each new entry is added before the old one is dropped, so a lock-free
+     * reader sees the user under the old key, the new key or both, never under neither.
+     */
+    private void replace(Row current, Row next) {
+        int id = next.view.getId();
+        next.view.setRowVersion(rowVersions.incrementAndGet());
+        rows.put(id, next);
+        byRowVersion.put(next.view.getRowVersion(), id);
+        byRowVersion.remove(current.view.getRowVersion());
+
+        moveKey(byUsername, current.view.getUsername(), next.view.getUsername(), id);
+        moveKey(byEmail, current.view.getEmail(), next.view.getEmail(), id);
+        moveMember(byStatus, String.valueOf(current.view.getStatusName()),
+                String.valueOf(next.view.getStatusName()), id);
+        for (Integer roleId : next.roleIds) {
+            if (!current.roleIds.contains(roleId)) {
+                byRole.computeIfAbsent(roleNames.get(roleId), k -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+        for (Integer roleId : current.roleIds) {
+            if (!next.roleIds.contains(roleId)) {
+                Set<Integer> role = byRole.get(roleNames.get(roleId));
+                if (role != null) {
+                    role.remove(id);
+                }
+            }
+        }
+    }
+
+    private static void moveKey(Map<String, Integer> index, String oldKey, String newKey, int id) {
+        if (Objects.equals(oldKey, newKey)) {
+            return;
+        }
+        index.put(newKey, id);
+        index.remove(oldKey, id);
+    }
+
+    private static void moveMember(Map<String, Set<Integer>> index, String oldKey, String newKey, int id) {
+        if (oldKey.equals(newKey)) {
+            return;
+        }
+        index.computeIfAbsent(newKey, k -> ConcurrentHashMap.newKeySet()).add(id);
+        Set<Integer> old = index.get(oldKey);
+        if (old != null) {
+            old.remove(id);
+        }
+    }
+
+    private void index(Row row) {
+        int id = row.view.getId();
+        byUsername.put(row.view.getUsername(), id);
+        byEmail.put(row.view.getEmail(), id);
+        byStatus.computeIfAbsent(String.valueOf(row.view.getStatusName()), k -> ConcurrentHashMap.newKeySet()).add(id);
+        for (Integer roleId : row.roleIds) {
+            byRole.computeIfAbsent(roleNames.get(roleId), k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private void unindex(Row row) {
+        int id = row.view.getId();
+        byUsername.remove(row.view.getUsername(), id);
+        byEmail.remove(row.view.getEmail(), id);
+        Set<Integer> status = byStatus.get(String.valueOf(row.view.getStatusName()));
+        if (status != null) {
+            status.remove(id);
+        }
+        for (Integer roleId : row.roleIds) {
+            Set<Integer> role = byRole.get(roleNames.get(roleId));
+            if (role != null) {
+                role.remove(id);
+            }
+        }
+    }
+
+    /** Fills roles and permissions the way the read model does: distinct, sorted, comma separated. */
+    private void applyRoles(User view, List<Integer> roleIds) {
+        Set<String> roles = new TreeSet<>();
+        for (Integer roleId : roleIds) {
+            roles.add(roleNames.get(roleId));
+        }
+        Set<String> permissions = new TreeSet<>(catalog.getPermissions(new ArrayList<>(roles)));
+        view.setRoles(roles.isEmpty() ? null : String.join(", ", roles));
+        view.setPermissions(permissions.isEmpty() ? null : String.join(", ", permissions));
+    }
+
+    private static void checkStatus(Integer statusId) throws SQLException {
+        if (statusId == null || !STATUSES.containsKey(statusId)) {
+            throw new SQLException("insert or update on table \"users\" violates foreign key constraint "
+                    + "\"fk_user_status\"", "23503");
+        }
+    }
+
+    private void checkUnique(String username, String email, Integer selfId) throws SQLException {
+        if (username != null && byUsername.containsKey(username)) {
+            throw new SQLException("duplicate key value violates unique constraint \"users_username_key\"", "23505");
+        }
+        Integer emailOwner = email == null ? null : byEmail.get(email);
+        if (emailOwner != null && !emailOwner.equals(selfId)) {
+            throw new SQLException("duplicate key value violates unique constraint \"users_email_key\"", "23505");
+        }
+    }
+
+    private List<Integer> checkRoles(List<Integer> roleIds) throws SQLException {
+        List<Integer> roles = new ArrayList<>();
+        if (roleIds == null) {
+            return roles;
+        }
+        for (Integer roleId : roleIds) {
+            if (!roleNames.containsKey(roleId)) {
+                throw new SQLException("insert or update on table \"user_roles\" violates foreign key constraint "
+                        + "\"fk_user_roles_role\"", "23503");
+            }
+            if (!roles.contains(roleId)) {
+                roles.add(roleId);
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Walks the sort index from the query's cursor, yielding copies of users that pass
+     * its filters. A role or status filter narrows the candidates through its index first.
+     */
+    private Iterator<User> iterate(UserQuery query) {
+        UserQuery.Sort sort = query.getSort();
+        NavigableSet<SortKey> index = sort.isByUsername() ? byUsernameOrder : byCreated;
+        if (sort.isDescending()) {
+            index = index.descendingSet();
+        }
+        if (query.hasCursor()) {
+            SortKey after = sort.isByUsername()
+                    ? new SortKey(null, query.getAfterUsername(), query.getAfterId())
+                    : new SortKey(query.getAfterCreatedAt(), null, query.getAfterId());
+            index = index.tailSet(after, false);
+        }
+
+        Set<Integer> candidates = null;
+        if (query.getRole() != null) {
+            candidates = byRole.getOrDefault(query.getRole(), Collections.emptySet());
+        }
+        if (query.getStatus() != null) {
+            Set<Integer> status = byStatus.getOrDefault(query.getStatus(), Collections.emptySet());
+            candidates = candidates == null || status.size() < candidates.size() ? status : candidates;
+        }
+        Set<Integer> narrowed = candidates;
+        String prefix = query.getPrefix() == null ? null : query.getPrefix().toLowerCase();
+        Iterator<SortKey> keys = index.iterator();
+
+        return new Iterator<>() {
+            private User next = advance();
+
+            private User advance() {
+                while (keys.hasNext()) {
+                    SortKey key = keys.next();
+                    if (narrowed != null && !narrowed.contains(key.id)) {
+                        continue;
+                    }
+                    Row row = rows.get(key.id);
+                    if (row != null && matches(row, query, prefix)) {
+                        return copyOf(row.view);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public User next() {
+                User current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private boolean matches(Row row, UserQuery query, String prefix) {
+        User user = row.view;
+        if (query.getStatus() != null && !query.getStatus().equals(user.getStatusName())) {
+            return false;
+        }
+        if (query.getRole() != null) {
+            Integer roleId = catalog.getRoleId(query.getRole());
+            if (roleId == null || !row.roleIds.contains(roleId)) {
+                return false;
+            }
+        }
+        return prefix == null
+                || user.getUsername().toLowerCase().startsWith(prefix)
+                || user.getEmail().toLowerCase().startsWith(prefix);
+    }
+
+    /** Microsecond precision, like a Postgres TIMESTAMP, so cursors round-trip the same way. */
+    private static Timestamp now() {
+        return Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MICROS));
+    }
+
+    private static User copyOf(User source) {
+        User user = new User(source.getId(), source.getUsername(), source.getEmail(), source.getFullName(),
+                source.getStatusId(), source.getStatusName(), source.getRoles(), source.getPermissions(),
+                source.getCreatedAt(), source.getUpdatedAt());
+        user.setRowVersion(source.getRowVersion());
+        return user;
+    }
+}
@@ -0,0 +1,66 @@
+package com.wms.repository;
+
+import com.wms.model.CatalogSnapshot;
+import com.wms.util.DatabaseConnection;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class PostgresRoleRepository implements RoleRepository {
+    private final DatabaseConnection dbConnection;
+
+    public PostgresRoleRepository() {
+        this.dbConnection = DatabaseConnection.getInstance();
+    }
+
+    /**
+     * Reads roles, permissions and their links in one repeatable-read transaction, so a
+     * role or permission added concurrently is either in all three results or in none.
+     */
+    @Override
+    public CatalogSnapshot loadCatalog() throws SQLException {
+        Map<String, Integer> roleIds = new LinkedHashMap<>();
+        Map<String, Integer> permissionIds = new LinkedHashMap<>();
+        Map<String, Set<String>> rolePermissions = new HashMap<>();
+
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+                readCatalog(stmt, roleIds, permissionIds, rolePermissions);
+            }
+            conn.commit();
+        }
+
+        return new CatalogSnapshot(roleIds, permissionIds, rolePermissions);
+    }
+
+    private static void readCatalog(Statement stmt, Map<String, Integer> roleIds, Map<String, Integer> permissionIds,
+                                    Map<String, Set<String>> rolePermissions) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT id, role_name FROM ums.roles ORDER BY id")) {
+            while (rs.next()) {
+                roleIds.put(rs.getString("role_name"), rs.getInt("id"));
+                rolePermissions.put(rs.getString("role_name"), new LinkedHashSet<>());
+            }
+        }
+
+        try (ResultSet rs = stmt.executeQuery("SELECT id, permission_name FROM ums.permissions ORDER BY id")) {
+            while (rs.next()) {
+                permissionIds.put(rs.getString("permission_name"), rs.getInt("id"));
+            }
+        }
+
+        String sql = "SELECT r.role_name, p.permission_name FROM ums.role_permissions rp " +
+                    "JOIN ums.roles r ON r.id = rp.role_id " +
+                    "JOIN ums.permissions p ON p.id = rp.permission_id ORDER BY p.id";
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                rolePermissions.get(rs.getString("role_name")).add(rs.getString("permission_name"));
+            }
+        }
+    }
+}
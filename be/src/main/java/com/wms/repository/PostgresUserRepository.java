@@ -0,0 +1,635 @@
+package com.wms.repository;
+
+import com.wms.model.BulkUserRow;
+import com.wms.model.User;
+import com.wms.model.UserChanges;
+import com.wms.model.UserPage;
+import com.wms.model.UserQuery;
+import com.wms.tracing.Span;
+import com.wms.tracing.Tracer;
+import com.wms.util.DatabaseConnection;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** {@link UserRepository} over Postgres, reading users from {@code ums.user_read_model}. */
+public class PostgresUserRepository implements UserRepository {
+    /**
+     * Columns of {@code ums.user_read_model} in the shape of {@code ums.user_view}: roles
+     * and permissions as comma separated names, null when empty.
+     */
+    private static final String USER_COLUMNS = "id, username, email, full_name, status_id, status_name, " +
+            "NULLIF(array_to_string(roles, ', '), '') AS roles, " +
+            "NULLIF(array_to_string(permissions, ', '), '') AS permissions, created_at, updated_at, row_version";
+
+    private final DatabaseConnection dbConnection;
+
+    public PostgresUserRepository() {
+        this.dbConnection = DatabaseConnection.getInstance();
+    }
+
+    @Override
+    public User findByUsername(String username) throws SQLException {
+        String sql = "SELECT id, username, password_hash, email, full_name, status_id " +
+                    "FROM ums.users WHERE username = ?";
+        
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, username);
+            ResultSet rs = stmt.executeQuery();
+            
+            if (rs.next()) {
+                User user = new User();
+                user.setId(rs.getInt("id"));
+                user.setUsername(rs.getString("username"));
+                user.setPasswordHash(rs.getString("password_hash"));
+                user.setEmail(rs.getString("email"));
+                user.setFullName(rs.getString("full_name"));
+                user.setStatusId(rs.getInt("status_id"));
+                return user;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public List<User> findAll() throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM ums.user_read_model " +
+                    "ORDER BY created_at DESC, id DESC";
+        
+        List<User> users = new ArrayList<>();
+        
+        try (Connection conn = dbConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                users.add(mapUserView(rs));
+            }
+        }
+        
+        return users;
+    }
+
+    /**
+     * Loads one page of the user list using keyset pagination over the read model's
+     * sort indexes, so the cost of a page does not grow with the table.
+     */
+    @Override
+    public UserPage findPage(UserQuery query) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT " + USER_COLUMNS + " FROM ums.user_read_model u WHERE TRUE" +
+                    buildFilters(query, params) + orderBy(query.getSort()) + " LIMIT ?";
+        params.add(query.getLimit() + 1);
+
+        List<User> users = new ArrayList<>();
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            setParams(stmt, params);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(mapUserView(rs));
+                }
+            }
+        }
+
+        String nextCursor = null;
+        if (users.size() > query.getLimit()) {
+            users.remove(users.size() - 1);
+            nextCursor = query.encodeCursor(users.get(users.size() - 1));
+        }
+        return new UserPage(users, nextCursor);
+    }
+
+    /**
+     * Streams every user matching {@code query}'s filters (its limit is ignored) to
+     * {@code handler} one row at a time. Rows are read in index order through a
+     * server-side cursor, so memory use does not depend on the number of users and
+     * the first row is available before the last one has been read.
+     */
+    @Override
+    public void streamAll(UserQuery query, UserRowHandler handler) throws SQLException, IOException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT " + USER_COLUMNS + " FROM ums.user_read_model u WHERE TRUE" +
+                    buildFilters(query, params) + orderBy(query.getSort());
+
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setFetchSize(dbConnection.getStreamFetchSize());
+                setParams(stmt, params);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.accept(mapUserView(rs));
+                    }
+                }
+            }
+            conn.commit();
+        }
+    }
+
+    /**
+     * Writes every user matching {@code query}'s filters to {@code out} using
+     * {@code COPY ... TO STDOUT}, as CSV with a header row or as one JSON object per line.
+     * Rows go from Postgres to the stream without being materialized here.
+     *
+     * @return the number of rows written
+     */
+    @Override
+    public long exportCopy(UserQuery query, boolean ndjson, OutputStream out) throws SQLException, IOException {
+        List<Object> params = new ArrayList<>();
+        String select = "SELECT id, username, email, full_name AS \"fullName\", status_id AS \"statusId\", " +
+                       "status_name AS \"statusName\", " +
+                       "NULLIF(array_to_string(roles, ', '), '') AS roles, " +
+                       "NULLIF(array_to_string(permissions, ', '), '') AS permissions, " +
+                       "created_at AS \"createdAt\", updated_at AS \"updatedAt\" " +
+                       "FROM ums.user_read_model u WHERE TRUE" + buildFilters(query, params) + orderBy(query.getSort());
+
+        try (Connection conn = dbConnection.getConnection()) {
+            String inlined = inlineParams(conn.unwrap(BaseConnection.class), select, params);
+            // Control characters never appear unescaped in JSON text, so using them as the CSV
+            // quote and delimiter makes COPY emit each JSON document untouched.
+            String sql = ndjson
+                    ? "COPY (SELECT row_to_json(t) FROM (" + inlined + ") t) TO STDOUT " +
+                      "WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')"
+                    : "COPY (" + inlined + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+            CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+            return copyManager.copyOut(sql, out);
+        }
+    }
+
+    /**
+     * COPY cannot take bind parameters, so filter values are inlined as literals, escaped
+     * by the driver for the connection's {@code standard_conforming_strings} setting.
+     */
+    private static String inlineParams(BaseConnection conn, String sql, List<Object> params) throws SQLException {
+        StringBuilder out = new StringBuilder(sql.length() + 32);
+        int param = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c != '?') {
+                out.append(c);
+                continue;
+            }
+            Object value = params.get(param++);
+            if (value instanceof Number) {
+                out.append(value);
+            } else {
+                out.append('\'');
+                out.append(conn.escapeString(value.toString()));
+                out.append("'::").append(value instanceof Timestamp ? "timestamp" : "text");
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Recomputes {@code ums.user_read_model} from the base tables. The triggers keep it
+     * current; this is for the initial backfill and for repairing drift.
+     */
+    @Override
+    public int rebuildReadModel() throws SQLException {
+        try (Connection conn = dbConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ums.rebuild_user_read_model()")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static String buildFilters(UserQuery query, List<Object> params) {
+        StringBuilder where = new StringBuilder();
+        UserQuery.Sort sort = query.getSort();
+        if (query.getStatus() != null) {
+            where.append(" AND u.status_name = ?");
+            params.add(query.getStatus());
+        }
+        if (query.getRole() != null) {
+            where.append(" AND u.roles @> ARRAY[?]::text[]");
+            params.add(query.getRole());
+        }
+        if (query.getPrefix() != null) {
+            String pattern = escapeLike(query.getPrefix().toLowerCase()) + "%";
+            where.append(" AND (lower(u.username) LIKE ? OR lower(u.email) LIKE ?)");
+            params.add(pattern);
+            params.add(pattern);
+        }
+        if (query.hasCursor()) {
+            where.append(" AND (u.").append(sortColumn(sort)).append(", u.id) ")
+                 .append(sort.isDescending() ? "<" : ">").append(" (?, ?)");
+            params.add(sort.isByUsername() ? query.getAfterUsername() : query.getAfterCreatedAt());
+            params.add(query.getAfterId());
+        }
+        return where.toString();
+    }
+
+    private static String sortColumn(UserQuery.Sort sort) {
+        return sort.isByUsername() ? "username" : "created_at";
+    }
+
+    private static String orderBy(UserQuery.Sort sort) {
+        String direction = sort.isDescending() ? " DESC" : " ASC";
+        return " ORDER BY u." + sortColumn(sort) + direction + ", u.id" + direction;
+    }
+
+    private static void setParams(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /** Returns the user's row version, or null if there is no such user. */
+    @Override
+    public Long findRowVersion(int id) throws SQLException {
+        String sql = "SELECT row_version FROM ums.user_read_model WHERE id = ?";
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    /** Version of the whole user list, bumped by every write to the read model. */
+    @Override
+    public long getCollectionVersion() throws SQLException {
+        // the counter is striped to spread writers' row locks; the sum still grows with every write
+        String sql = "SELECT COALESCE(SUM(version), 0) FROM ums.collection_versions WHERE name = 'users'";
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    /**
+     * Reads changed rows and tombstones past the cursor in one round trip and one
+     * repeatable-read snapshot, so both lists reflect the same set of commits.
+     * {@code change_version} is the id of the writing transaction. Only changes from
+     * transactions below the snapshot's xmin are returned: every one of those has
+     * finished, so a transaction still running, which may commit later, sorts after the
+     * returned cursor. A long-running transaction therefore holds the feed back until
+     * it ends.
+     */
+    @Override
+    public UserChanges findChanges(long afterVersion, int afterId, int limit) throws SQLException {
+        boolean fullSync = afterVersion == 0 && afterId == 0;
+        String sql = "SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY; " +
+                "SELECT pruned_through FROM ums.change_log_retention WHERE name = 'users'; " +
+                "SELECT " + USER_COLUMNS + ", change_version FROM ums.user_read_model " +
+                "WHERE (change_version, id) > (?, ?) " +
+                "AND change_version < txid_snapshot_xmin(txid_current_snapshot()) " +
+                "ORDER BY change_version, id LIMIT ?; " +
+                "SELECT t.id, t.change_version FROM ums.user_tombstones t " +
+                "WHERE ? AND (t.change_version, t.id) > (?, ?) " +
+                "AND t.change_version < txid_snapshot_xmin(txid_current_snapshot()) " +
+                "AND NOT EXISTS (SELECT 1 FROM ums.user_read_model r WHERE r.id = t.id) " +
+                "ORDER BY t.change_version, t.id LIMIT ?";
+
+        long prunedThrough = 0;
+        List<User> users = new ArrayList<>();
+        List<Long> userVersions = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        List<Long> deletedVersions = new ArrayList<>();
+        try (Connection conn = dbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                setParams(stmt, List.<Object>of(afterVersion, afterId, limit + 1,
+                        !fullSync, afterVersion, afterId, limit + 1));
+                int resultSets = 0;
+                boolean isResultSet = stmt.execute();
+                while (isResultSet || stmt.getUpdateCount() != -1) {
+                    if (isResultSet) {
+                        try (ResultSet rs = stmt.getResultSet()) {
+                            while (rs.next()) {
+                                if (resultSets == 0) {
+                                    prunedThrough = rs.getLong(1);
+                                } else if (resultSets == 1) {
+                                    users.add(mapUserView(rs));
+                                    userVersions.add(rs.getLong("change_version"));
+                                } else {
+                                    deletedIds.add(rs.getInt(1));
+                                    deletedVersions.add(rs.getLong(2));
+                                }
+                            }
+                        }
+                        resultSets++;
+                    }
+                    isResultSet = stmt.getMoreResults();
+                }
+            }
+            conn.commit();
+        }
+        UserChanges.checkNotExpired(afterVersion, afterId, prunedThrough);
+        return UserChanges.merge(users, userVersions, deletedIds, deletedVersions, limit, afterVersion, afterId);
+    }
+
+    @Override
+    public User findById(int id) throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM ums.user_read_model WHERE id = ?";
+        
+        try (Span span = Tracer.span("db.findById");
+             Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, id);
+            ResultSet rs = stmt.executeQuery();
+            
+            if (rs.next()) {
+                return mapUserView(rs);
+            }
+            return null;
+        }
+    }
+
+    /** One {@code = ANY(?)} lookup for any number of ids. */
+    @Override
+    public List<User> findByIds(Collection<Integer> ids) throws SQLException {
+        List<User> users = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return users;
+        }
+        String sql = "SELECT " + USER_COLUMNS + " FROM ums.user_read_model WHERE id = ANY(?)";
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", ids.toArray(new Integer[0])));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(mapUserView(rs));
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Substring and trigram-similarity match over username, email and full name, served
+     * by the {@code pg_trgm} GIN indexes on the read model. Username prefix matches rank
+     * first, then the closest match on any of the three columns.
+     */
+    @Override
+    public List<User> search(String term, int limit) throws SQLException {
+        String needle = term.toLowerCase();
+        String contains = "%" + escapeLike(needle) + "%";
+        String sql = "SELECT " + USER_COLUMNS + " FROM ums.user_read_model u " +
+                "WHERE lower(u.username) LIKE ? OR lower(u.email) LIKE ? OR lower(u.full_name) LIKE ? " +
+                "OR lower(u.username) % ? OR lower(u.full_name) % ? " +
+                "ORDER BY lower(u.username) LIKE ? DESC, " +
+                "greatest(similarity(lower(u.username), ?), similarity(lower(u.email), ?), " +
+                "similarity(lower(coalesce(u.full_name, '')), ?)) DESC, u.username, u.id LIMIT ?";
+
+        List<User> users = new ArrayList<>();
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParams(stmt, List.<Object>of(contains, contains, contains, needle, needle,
+                    escapeLike(needle) + "%", needle, needle, needle, limit));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(mapUserView(rs));
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Inserts the user and its role links in one statement and reads back the read model
+     * row its triggers wrote. Both statements reach the server in a single round trip and
+     * run in one implicit transaction.
+     */
+    @Override
+    public User create(User user, String passwordHash, List<Integer> roleIds) throws SQLException {
+        String sql = "WITH created AS (" +
+                "INSERT INTO ums.users (username, password_hash, email, full_name, status_id) " +
+                "VALUES (?, ?, ?, ?, ?) RETURNING id), " +
+                "linked AS (INSERT INTO ums.user_roles (user_id, role_id) " +
+                "SELECT DISTINCT created.id, role_id FROM created, unnest(?::int[]) AS role_id) " +
+                "SELECT id FROM created; " +
+                "SELECT " + USER_COLUMNS + " FROM ums.user_read_model " +
+                "WHERE id = currval(pg_get_serial_sequence('ums.users', 'id'))";
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, user.getUsername());
+            stmt.setString(2, passwordHash);
+            stmt.setString(3, user.getEmail());
+            stmt.setString(4, user.getFullName());
+            stmt.setInt(5, user.getStatusId());
+            stmt.setArray(6, conn.createArrayOf("integer",
+                    roleIds == null ? new Integer[0] : roleIds.toArray(new Integer[0])));
+
+            stmt.execute();
+            User created = readWrittenUser(stmt);
+            if (created == null) {
+                throw new SQLException("Failed to create user");
+            }
+            return created;
+        }
+    }
+
+    /**
+     * Updates the user and reads back its read model row in one round trip. Returns null
+     * when no user has that id.
+     */
+    @Override
+    public User update(int id, User user) throws SQLException {
+        String sql = "UPDATE ums.users SET email = ?, full_name = ?, status_id = ?, " +
+                    "updated_at = CURRENT_TIMESTAMP WHERE id = ?; " +
+                    "SELECT " + USER_COLUMNS + " FROM ums.user_read_model WHERE id = ?";
+
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, user.getEmail());
+            stmt.setString(2, user.getFullName());
+            stmt.setInt(3, user.getStatusId());
+            stmt.setInt(4, id);
+            stmt.setInt(5, id);
+
+            stmt.execute();
+            if (stmt.getUpdateCount() == 0) {
+                return null;
+            }
+            return readWrittenUser(stmt);
+        }
+    }
+
+    /** Moves past a write's own result to the read model row selected after it. */
+    private static User readWrittenUser(PreparedStatement stmt) throws SQLException {
+        while (!stmt.getMoreResults()) {
+            if (stmt.getUpdateCount() == -1) {
+                return null;
+            }
+        }
+        try (ResultSet rs = stmt.getResultSet()) {
+            return rs.next() ? mapUserView(rs) : null;
+        }
+    }
+
+    @Override
+    public boolean delete(int id) throws SQLException {
+        String sql = "DELETE FROM ums.users WHERE id = ?";
+        
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, id);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Inserts a batch of users and their role links in one transaction. Rows are loaded
+     * into temporary tables with {@code COPY} and moved into {@code ums.users} /
+     * {@code ums.user_roles} by a single statement. Each row is marked with its new id,
+     * or with an error when its status is unknown or its username/email is taken.
+     * Rows must already be hashed, resolved to role ids and free of in-batch duplicates.
+     */
+    @Override
+    public void bulkCreate(List<BulkUserRow> rows) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = dbConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            Set<Integer> statusIds = new HashSet<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id FROM ums.user_status")) {
+                while (rs.next()) {
+                    statusIds.add(rs.getInt(1));
+                }
+            }
+
+            StringBuilder users = new StringBuilder();
+            StringBuilder userRoles = new StringBuilder();
+            Map<String, BulkUserRow> byUsername = new HashMap<>();
+            for (BulkUserRow row : rows) {
+                if (row.isFailed()) {
+                    continue;
+                }
+                User user = row.getUser();
+                if (!statusIds.contains(user.getStatusId())) {
+                    row.setError("Unknown status id: " + user.getStatusId());
+                    continue;
+                }
+                byUsername.put(user.getUsername(), row);
+                appendCsvRow(users, row.getLine(), user.getUsername(), row.getPasswordHash(),
+                        user.getEmail(), user.getFullName(), user.getStatusId());
+                if (row.getRoleIds() != null) {
+                    for (Integer roleId : row.getRoleIds()) {
+                        appendCsvRow(userRoles, row.getLine(), roleId);
+                    }
+                }
+            }
+
+            if (!byUsername.isEmpty()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TEMP TABLE bulk_users (line INTEGER, username VARCHAR(100), " +
+                                "password_hash VARCHAR(255), email VARCHAR(255), full_name VARCHAR(255), " +
+                                "status_id INTEGER) ON COMMIT DROP");
+                    stmt.execute("CREATE TEMP TABLE bulk_user_roles (line INTEGER, role_id INTEGER) ON COMMIT DROP");
+                }
+
+                CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+                try {
+                    copyManager.copyIn("COPY bulk_users FROM STDIN WITH (FORMAT csv)",
+                            new StringReader(users.toString()));
+                    copyManager.copyIn("COPY bulk_user_roles FROM STDIN WITH (FORMAT csv)",
+                            new StringReader(userRoles.toString()));
+                } catch (IOException e) {
+                    throw new SQLException("Failed to copy bulk import rows", e);
+                }
+
+                String insertSql = "WITH inserted AS (" +
+                        "INSERT INTO ums.users (username, password_hash, email, full_name, status_id) " +
+                        "SELECT username, password_hash, email, full_name, status_id FROM bulk_users ORDER BY line " +
+                        "ON CONFLICT DO NOTHING RETURNING id, username), " +
+                        "linked AS (INSERT INTO ums.user_roles (user_id, role_id) " +
+                        "SELECT DISTINCT i.id, r.role_id FROM inserted i " +
+                        "JOIN bulk_users b ON b.username = i.username " +
+                        "JOIN bulk_user_roles r ON r.line = b.line ON CONFLICT DO NOTHING) " +
+                        "SELECT id, username FROM inserted";
+
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(insertSql)) {
+                    while (rs.next()) {
+                        byUsername.get(rs.getString("username")).setCreatedId(rs.getInt("id"));
+                    }
+                }
+            }
+
+            conn.commit();
+
+            for (BulkUserRow row : byUsername.values()) {
+                if (row.getCreatedId() == null) {
+                    row.setError("Username or email already exists");
+                }
+            }
+        } catch (SQLException e) {
+            if (conn != null) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+        }
+    }
+
+    private static void appendCsvRow(StringBuilder out, Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            Object value = values[i];
+            if (value != null) {
+                out.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+            }
+        }
+        out.append('\n');
+    }
+
+    static User mapUserView(ResultSet rs) throws SQLException {
+        User user = new User(
+            rs.getInt("id"),
+            rs.getString("username"),
+            rs.getString("email"),
+            rs.getString("full_name"),
+            rs.getInt("status_id"),
+            rs.getString("status_name"),
+            rs.getString("roles"),
+            rs.getString("permissions"),
+            rs.getTimestamp("created_at"),
+            rs.getTimestamp("updated_at")
+        );
+        user.setRowVersion(rs.getLong("row_version"));
+        return user;
+    }
+}
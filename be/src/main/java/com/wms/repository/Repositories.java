@@ -0,0 +1,56 @@
+package com.wms.repository;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Picks the storage engine from {@code repository.engine}: {@code postgres} (default)
+ * or {@code memory}, which needs no database and starts from the seed catalog.
+ */
+public final class Repositories {
+    public static final String ENGINE_POSTGRES = "postgres";
+    public static final String ENGINE_MEMORY = "memory";
+
+    private static final String ENGINE = loadEngine();
+
+    private Repositories() {
+    }
+
+    private static String loadEngine() {
+        try (InputStream input = Repositories.class.getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            String engine = prop.getProperty("repository.engine", ENGINE_POSTGRES).trim().toLowerCase();
+            if (!ENGINE_POSTGRES.equals(engine) && !ENGINE_MEMORY.equals(engine)) {
+                throw new IllegalArgumentException("Unknown repository.engine: " + engine);
+            }
+            return engine;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load repository configuration", e);
+        }
+    }
+
+    public static String getEngine() {
+        return ENGINE;
+    }
+
+    public static boolean isInMemory() {
+        return ENGINE_MEMORY.equals(ENGINE);
+    }
+
+    /**
+     * The in-memory store is shared, so every caller sees the same users. Either engine
+     * is wrapped to record per-method timings for {@code /metrics}.
+     */
+    public static UserRepository users() {
+        UserRepository users = isInMemory() ? InMemoryUserRepository.getInstance() : new PostgresUserRepository();
+        return new TimedUserRepository(users, ENGINE);
+    }
+
+    public static RoleRepository roles() {
+        return isInMemory() ? InMemoryUserRepository.getInstance() : new PostgresRoleRepository();
+    }
+}
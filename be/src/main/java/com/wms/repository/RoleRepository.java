@@ -0,0 +1,11 @@
+package com.wms.repository;
+
+import com.wms.model.CatalogSnapshot;
+
+import java.sql.SQLException;
+
+/** Source of the role/permission catalog. */
+public interface RoleRepository {
+
+    CatalogSnapshot loadCatalog() throws SQLException;
+}
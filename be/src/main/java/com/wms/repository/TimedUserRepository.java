@@ -0,0 +1,194 @@
+package com.wms.repository;
+
+import com.wms.metrics.LatencyHistogram;
+import com.wms.metrics.Metrics;
+import com.wms.model.BulkUserRow;
+import com.wms.model.User;
+import com.wms.model.UserChanges;
+import com.wms.model.UserPage;
+import com.wms.model.UserQuery;
+import com.wms.tracing.Span;
+import com.wms.tracing.Tracer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records per-method latency and failures of another {@link UserRepository}, and opens
+ * a {@code repository.<method>} span for sampled traces. Timings include borrowing the
+ * connection, so pool waits show up here as well as in the pool gauges.
+ */
+class TimedUserRepository implements UserRepository {
+    private final UserRepository delegate;
+    private final Timer findByUsername;
+    private final Timer findAll;
+    private final Timer findPage;
+    private final Timer streamAll;
+    private final Timer exportCopy;
+    private final Timer rebuildReadModel;
+    private final Timer findRowVersion;
+    private final Timer getCollectionVersion;
+    private final Timer findChanges;
+    private final Timer findById;
+    private final Timer findByIds;
+    private final Timer search;
+    private final Timer create;
+    private final Timer update;
+    private final Timer delete;
+    private final Timer bulkCreate;
+
+    private interface Call<T> {
+        T run() throws SQLException;
+    }
+
+    private static final class Timer {
+        final String spanName;
+        final LatencyHistogram latency;
+        final LongAdder errors;
+
+        Timer(String engine, String method) {
+            Metrics metrics = Metrics.getInstance();
+            this.spanName = "repository." + method;
+            this.latency = metrics.histogram("wms_repository_seconds", "UserRepository call latency",
+                    "engine", engine, "method", method);
+            this.errors = metrics.counter("wms_repository_errors_total", "UserRepository calls that threw",
+                    "engine", engine, "method", method);
+        }
+
+        <T> T time(Call<T> call) throws SQLException {
+            long startedAt = System.nanoTime();
+            try (Span span = Tracer.span(spanName)) {
+                return call.run();
+            } catch (SQLException | RuntimeException e) {
+                errors.increment();
+                throw e;
+            } finally {
+                latency.recordSince(startedAt);
+            }
+        }
+    }
+
+    TimedUserRepository(UserRepository delegate, String engine) {
+        this.delegate = delegate;
+        this.findByUsername = new Timer(engine, "findByUsername");
+        this.findAll = new Timer(engine, "findAll");
+        this.findPage = new Timer(engine, "findPage");
+        this.streamAll = new Timer(engine, "streamAll");
+        this.exportCopy = new Timer(engine, "exportCopy");
+        this.rebuildReadModel = new Timer(engine, "rebuildReadModel");
+        this.findRowVersion = new Timer(engine, "findRowVersion");
+        this.getCollectionVersion = new Timer(engine, "getCollectionVersion");
+        this.findChanges = new Timer(engine, "findChanges");
+        this.findById = new Timer(engine, "findById");
+        this.findByIds = new Timer(engine, "findByIds");
+        this.search = new Timer(engine, "search");
+        this.create = new Timer(engine, "create");
+        this.update = new Timer(engine, "update");
+        this.delete = new Timer(engine, "delete");
+        this.bulkCreate = new Timer(engine, "bulkCreate");
+    }
+
+    @Override
+    public User findByUsername(String username) throws SQLException {
+        return findByUsername.time(() -> delegate.findByUsername(username));
+    }
+
+    @Override
+    public List<User> findAll() throws SQLException {
+        return findAll.time(delegate::findAll);
+    }
+
+    @Override
+    public UserPage findPage(UserQuery query) throws SQLException {
+        return findPage.time(() -> delegate.findPage(query));
+    }
+
+    /** Includes the time the handler spends writing rows to the client. */
+    @Override
+    public void streamAll(UserQuery query, UserRowHandler handler) throws SQLException, IOException {
+        long startedAt = System.nanoTime();
+        try (Span span = Tracer.span(streamAll.spanName)) {
+            delegate.streamAll(query, handler);
+        } catch (SQLException | IOException | RuntimeException e) {
+            streamAll.errors.increment();
+            throw e;
+        } finally {
+            streamAll.latency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public long exportCopy(UserQuery query, boolean ndjson, OutputStream out) throws SQLException, IOException {
+        long startedAt = System.nanoTime();
+        try (Span span = Tracer.span(exportCopy.spanName)) {
+            return delegate.exportCopy(query, ndjson, out);
+        } catch (SQLException | IOException | RuntimeException e) {
+            exportCopy.errors.increment();
+            throw e;
+        } finally {
+            exportCopy.latency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public int rebuildReadModel() throws SQLException {
+        return rebuildReadModel.time(delegate::rebuildReadModel);
+    }
+
+    @Override
+    public Long findRowVersion(int id) throws SQLException {
+        return findRowVersion.time(() -> delegate.findRowVersion(id));
+    }
+
+    @Override
+    public long getCollectionVersion() throws SQLException {
+        return getCollectionVersion.time(delegate::getCollectionVersion);
+    }
+
+    @Override
+    public UserChanges findChanges(long afterVersion, int afterId, int limit) throws SQLException {
+        return findChanges.time(() -> delegate.findChanges(afterVersion, afterId, limit));
+    }
+
+    @Override
+    public User findById(int id) throws SQLException {
+        return findById.time(() -> delegate.findById(id));
+    }
+
+    @Override
+    public List<User> findByIds(Collection<Integer> ids) throws SQLException {
+        return findByIds.time(() -> delegate.findByIds(ids));
+    }
+
+    @Override
+    public List<User> search(String term, int limit) throws SQLException {
+        return search.time(() -> delegate.search(term, limit));
+    }
+
+    @Override
+    public User create(User user, String passwordHash, List<Integer> roleIds) throws SQLException {
+        return create.time(() -> delegate.create(user, passwordHash, roleIds));
+    }
+
+    @Override
+    public User update(int id, User user) throws SQLException {
+        return update.time(() -> delegate.update(id, user));
+    }
+
+    @Override
+    public boolean delete(int id) throws SQLException {
+        return delete.time(() -> delegate.delete(id));
+    }
+
+    @Override
+    public void bulkCreate(List<BulkUserRow> rows) throws SQLException {
+        bulkCreate.time(() -> {
+            delegate.bulkCreate(rows);
+            return null;
+        });
+    }
+}
@@ -1,213 +1,77 @@
 package com.wms.repository;
 
+import com.wms.model.BulkUserRow;
 import com.wms.model.User;
-import com.wms.util.DatabaseConnection;
-
-import java.sql.*;
-import java.util.ArrayList;
+import com.wms.model.UserChanges;
+import com.wms.model.UserPage;
+import com.wms.model.UserQuery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
-public class UserRepository {
-    private final DatabaseConnection dbConnection;
-
-    public UserRepository() {
-        this.dbConnection = DatabaseConnection.getInstance();
-    }
-
-    public User findByUsername(String username) throws SQLException {
-        String sql = "SELECT id, username, password_hash, email, full_name, status_id " +
-                    "FROM ums.users WHERE username = ?";
-        
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setPasswordHash(rs.getString("password_hash"));
-                user.setEmail(rs.getString("email"));
-                user.setFullName(rs.getString("full_name"));
-                user.setStatusId(rs.getInt("status_id"));
-                return user;
-            }
-            return null;
-        }
-    }
-
-    public List<User> findAll() throws SQLException {
-        String sql = "SELECT id, username, email, full_name, status_id, status_name, " +
-                    "roles, permissions, created_at, updated_at FROM ums.user_view " +
-                    "ORDER BY created_at DESC";
-        
-        List<User> users = new ArrayList<>();
-        
-        try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                User user = new User(
-                    rs.getInt("id"),
-                    rs.getString("username"),
-                    rs.getString("email"),
-                    rs.getString("full_name"),
-                    rs.getInt("status_id"),
-                    rs.getString("status_name"),
-                    rs.getString("roles"),
-                    rs.getString("permissions"),
-                    rs.getTimestamp("created_at"),
-                    rs.getTimestamp("updated_at")
-                );
-                users.add(user);
-            }
-        }
-        
-        return users;
-    }
-
-    public User findById(int id) throws SQLException {
-        String sql = "SELECT id, username, email, full_name, status_id, status_name, " +
-                    "roles, permissions, created_at, updated_at FROM ums.user_view WHERE id = ?";
-        
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return new User(
-                    rs.getInt("id"),
-                    rs.getString("username"),
-                    rs.getString("email"),
-                    rs.getString("full_name"),
-                    rs.getInt("status_id"),
-                    rs.getString("status_name"),
-                    rs.getString("roles"),
-                    rs.getString("permissions"),
-                    rs.getTimestamp("created_at"),
-                    rs.getTimestamp("updated_at")
-                );
-            }
-            return null;
-        }
-    }
-
-    public User create(User user, String passwordHash, List<Integer> roleIds) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = dbConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            String insertUserSql = "INSERT INTO ums.users (username, password_hash, email, full_name, status_id) " +
-                                  "VALUES (?, ?, ?, ?, ?) RETURNING id";
-            
-            int userId;
-            try (PreparedStatement stmt = conn.prepareStatement(insertUserSql)) {
-                stmt.setString(1, user.getUsername());
-                stmt.setString(2, passwordHash);
-                stmt.setString(3, user.getEmail());
-                stmt.setString(4, user.getFullName());
-                stmt.setInt(5, user.getStatusId());
-                
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    userId = rs.getInt(1);
-                } else {
-                    throw new SQLException("Failed to create user");
-                }
-            }
-
-            if (roleIds != null && !roleIds.isEmpty()) {
-                String insertRolesSql = "INSERT INTO ums.user_roles (user_id, role_id) VALUES (?, ?)";
-                try (PreparedStatement stmt = conn.prepareStatement(insertRolesSql)) {
-                    for (Integer roleId : roleIds) {
-                        stmt.setInt(1, userId);
-                        stmt.setInt(2, roleId);
-                        stmt.addBatch();
-                    }
-                    stmt.executeBatch();
-                }
-            }
-
-            conn.commit();
-            return findById(userId);
-            
-        } catch (SQLException e) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
-            }
-        }
-    }
-
-    public User update(int id, User user) throws SQLException {
-        String sql = "UPDATE ums.users SET email = ?, full_name = ?, status_id = ?, " +
-                    "updated_at = CURRENT_TIMESTAMP WHERE id = ?";
-        
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, user.getEmail());
-            stmt.setString(2, user.getFullName());
-            stmt.setInt(3, user.getStatusId());
-            stmt.setInt(4, id);
-            
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                return findById(id);
-            }
-            return null;
-        }
-    }
-
-    public boolean delete(int id) throws SQLException {
-        String sql = "DELETE FROM ums.users WHERE id = ?";
-        
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
-        }
-    }
-
-    public List<Integer> getRoleIdsByName(List<String> roleNames) throws SQLException {
-        if (roleNames == null || roleNames.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        StringBuilder sql = new StringBuilder("SELECT id FROM ums.roles WHERE role_name IN (");
-        for (int i = 0; i < roleNames.size(); i++) {
-            sql.append(i > 0 ? ",?" : "?");
-        }
-        sql.append(")");
-
-        List<Integer> roleIds = new ArrayList<>();
-        
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
-            
-            for (int i = 0; i < roleNames.size(); i++) {
-                stmt.setString(i + 1, roleNames.get(i));
-            }
-            
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                roleIds.add(rs.getInt("id"));
-            }
-        }
-        
-        return roleIds;
-    }
-}
+/**
+ * User storage. Users come back with their status name and aggregated roles and
+ * permissions (comma separated). Implementations: {@link PostgresUserRepository} and
+ * {@link InMemoryUserRepository}; {@link Repositories} picks one.
+ */
+public interface UserRepository {
+
+    /** Login lookup; the only read that includes the password hash. */
+    User findByUsername(String username) throws SQLException;
+
+    List<User> findAll() throws SQLException;
+
+    /** One keyset page; the page holds at most {@code query.getLimit()} users. */
+    UserPage findPage(UserQuery query) throws SQLException;
+
+    /** Every user matching the query's filters, in its sort order, ignoring the limit. */
+    void streamAll(UserQuery query, UserRowHandler handler) throws SQLException, IOException;
+
+    /** Writes matching users as CSV (with header) or NDJSON; returns the number of rows. */
+    long exportCopy(UserQuery query, boolean ndjson, OutputStream out) throws SQLException, IOException;
+
+    /** Recomputes derived user data from the base data; returns the number of users. */
+    int rebuildReadModel() throws SQLException;
+
+    /** Version that changes whenever the user does, or null if there is no such user. */
+    Long findRowVersion(int id) throws SQLException;
 
+    /** Version that changes whenever any user is written. */
+    long getCollectionVersion() throws SQLException;
+
+    /**
+     * Users written and users deleted after the (version, id) position, at most
+     * {@code limit} in all. Versions are assigned in commit order, so a cursor never
+     * skips a change that commits later.
+     */
+    UserChanges findChanges(long afterVersion, int afterId, int limit) throws SQLException;
+
+    User findById(int id) throws SQLException;
+
+    /** The users with the given ids, in no particular order; unknown ids are left out. */
+    List<User> findByIds(Collection<Integer> ids) throws SQLException;
+
+    /**
+     * Up to {@code limit} users whose username, email or full name contains {@code term}
+     * (case-insensitive) or, where supported, closely resembles it; best matches first.
+     */
+    List<User> search(String term, int limit) throws SQLException;
+
+    /** Creates the user with its roles and returns it as {@link #findById(int)} would. */
+    User create(User user, String passwordHash, List<Integer> roleIds) throws SQLException;
+
+    /** Updates email, full name and status; returns the updated user, or null if not found. */
+    User update(int id, User user) throws SQLException;
+
+    /** Returns false when no user has that id. */
+    boolean delete(int id) throws SQLException;
+
+    /**
+     * Inserts hashed, role-resolved rows, marking each with its new id or an error
+     * (unknown status, username or email taken).
+     */
+    void bulkCreate(List<BulkUserRow> rows) throws SQLException;
+}
@@ -0,0 +1,10 @@
+package com.wms.repository;
+
+import com.wms.model.User;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface UserRowHandler {
+    void accept(User user) throws IOException;
+}
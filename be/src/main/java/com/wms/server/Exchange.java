@@ -0,0 +1,55 @@
+package com.wms.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One HTTP request and its response, independent of the engine serving it. Routes and
+ * controllers only see this interface. Response semantics follow
+ * {@code com.sun.net.httpserver}: {@link #sendResponseHeaders(int, long)} with a length
+ * of 0 streams a chunked body and -1 sends no body.
+ */
+public interface Exchange {
+
+    String getRequestMethod();
+
+    /** Decoded request path, without the query string. */
+    String getPath();
+
+    /** Raw (still percent-encoded) query string, or null if there is none. */
+    String getRawQuery();
+
+    /** First value of a request header, matched case-insensitively, or null. */
+    String getRequestHeader(String name);
+
+    InputStream getRequestBody();
+
+    void setResponseHeader(String name, String value);
+
+    void addResponseHeader(String name, String value);
+
+    void sendResponseHeaders(int statusCode, long length) throws IOException;
+
+    boolean isResponseStarted();
+
+    /** Status passed to {@link #sendResponseHeaders(int, long)}, or 0 before it is called. */
+    int getResponseStatus();
+
+    OutputStream getResponseBody();
+
+    Object getAttribute(String name);
+
+    void setAttribute(String name, Object value);
+
+    /** Completes the response. Safe to call more than once. */
+    void close();
+
+    /**
+     * Drops the connection without completing the response, so a client reading a
+     * streamed body sees it cut short instead of ending cleanly. For handlers that fail
+     * after the headers were sent. Later calls to {@link #close()} do nothing. May be
+     * called from another thread, e.g. to cut off a stream whose writer is blocked.
+     */
+    void abort();
+}
@@ -0,0 +1,22 @@
+package com.wms.server;
+
+import java.io.IOException;
+
+/**
+ * Accepts connections and turns them into {@link Exchange}s for the server pipeline.
+ * Selected by {@code server.engine}: {@code jdk} ({@link JdkHttpEngine}) or
+ * {@code nio} ({@link NioHttpEngine}).
+ */
+public interface HttpEngine {
+    String ENGINE_JDK = "jdk";
+    String ENGINE_NIO = "nio";
+
+    @FunctionalInterface
+    interface Handler {
+        void handle(Exchange exchange) throws IOException;
+    }
+
+    void start();
+
+    void stop();
+}
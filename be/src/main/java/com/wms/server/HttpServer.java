@@ -1,33 +1,54 @@
 package com.wms.server;
 
-import com.sun.net.httpserver.HttpExchange;
 import com.wms.controller.AuthController;
+import com.wms.controller.MetricsController;
 import com.wms.controller.UserController;
+import com.wms.metrics.Metrics;
+import com.wms.service.UserEventHub;
+import com.wms.tracing.Span;
+import com.wms.tracing.Trace;
+import com.wms.tracing.Tracer;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class HttpServer {
-    private final com.sun.net.httpserver.HttpServer server;
     private final AuthController authController;
     private final UserController userController;
+    private final MetricsController metricsController;
+    private final Metrics metrics;
+    private final Tracer tracer;
+    private final RequestAuthorizer authorizer;
+    private final Router router;
     private String corsOrigins;
+    private ServerExecutor executor;
+    private Properties properties;
+    private final HttpEngine engine;
 
     public HttpServer(int port) throws IOException {
-        this.server = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress(port), 0);
         this.authController = new AuthController();
         this.userController = new UserController();
+        this.metricsController = new MetricsController();
+        this.metrics = Metrics.getInstance();
+        this.tracer = Tracer.getInstance();
+        this.authorizer = new RequestAuthorizer();
+        this.router = new Router();
         loadProperties();
         setupRoutes();
+        registerExecutorMetrics();
+        this.engine = createEngine(port);
     }
 
     private void loadProperties() {
+        Properties prop = new Properties();
         try (InputStream input = getClass().getClassLoader()
                 .getResourceAsStream("application.properties")) {
-            Properties prop = new Properties();
             if (input != null) {
                 prop.load(input);
                 this.corsOrigins = prop.getProperty("server.cors.origins", "*");
@@ -35,59 +56,166 @@ public class HttpServer {
         } catch (Exception e) {
             this.corsOrigins = "*";
         }
+        this.executor = ServerExecutor.fromProperties(prop);
+        this.properties = prop;
+        UserEventHub.getInstance().limitToThreads(executor.getMaxThreads());
+    }
+
+    private HttpEngine createEngine(int port) throws IOException {
+        String name = properties.getProperty("server.engine", HttpEngine.ENGINE_JDK).trim().toLowerCase();
+        switch (name) {
+            case HttpEngine.ENGINE_JDK:
+                return new JdkHttpEngine(port, executor, this::handleWithCors);
+            case HttpEngine.ENGINE_NIO:
+                return new NioHttpEngine(port, executor, this::handleWithCors, properties);
+            default:
+                throw new IllegalArgumentException("Unknown server.engine: " + name);
+        }
     }
 
     private void setupRoutes() {
-        server.createContext("/api/auth/login", this::handleWithCors);
-        server.createContext("/api/users", this::handleWithCors);
-        server.setExecutor(null);
+        router.add("POST", "/api/auth/login", (exchange, params) -> authController.login(exchange))
+              .add("POST", "/api/auth/refresh", (exchange, params) -> authController.refresh(exchange))
+              .add("POST", "/api/auth/logout", (exchange, params) -> authController.logout(exchange));
+        if (metrics.isEnabled()) {
+            router.add("GET", "/metrics", metrics.getPermission(),
+                    (exchange, params) -> metricsController.getMetrics(exchange));
+        }
+
+        router.add("GET", "/api/users", "user.read", (exchange, params) -> userController.getAllUsers(exchange))
+              .add("POST", "/api/users", "user.create", (exchange, params) -> userController.createUser(exchange))
+              .add("POST", "/api/users/bulk", "data.import",
+                   (exchange, params) -> userController.bulkCreateUsers(exchange))
+              .add("GET", "/api/users/export", "data.export",
+                   (exchange, params) -> userController.exportUsers(exchange))
+              .add("GET", "/api/users/search", "user.read",
+                   (exchange, params) -> userController.searchUsers(exchange))
+              .add("GET", "/api/users/changes", "user.read",
+                   (exchange, params) -> userController.getUserChanges(exchange))
+              .add("GET", "/api/users/events", "user.read",
+                   (exchange, params) -> userController.streamUserEvents(exchange))
+              .add("GET", "/api/users/{id:int}", "user.read",
+                   (exchange, params) -> userController.getUserById(exchange, params.getInt("id")))
+              .add("PUT", "/api/users/{id:int}", "user.update",
+                   (exchange, params) -> userController.updateUser(exchange, params.getInt("id")))
+              .add("DELETE", "/api/users/{id:int}", "user.delete",
+                   (exchange, params) -> userController.deleteUser(exchange, params.getInt("id")));
     }
 
-    private void handleWithCors(HttpExchange exchange) throws IOException {
-        addCorsHeaders(exchange);
+    private void registerExecutorMetrics() {
+        String[] mode = {"mode", executor.getMode()};
+        metrics.gauge("wms_executor_active_threads", "Request threads running a task",
+                executor::getActiveCount, mode);
+        metrics.gauge("wms_executor_max_threads", "Request thread limit (-1 when unbounded)",
+                executor::getMaxThreads, mode);
+        metrics.gauge("wms_executor_queue_depth", "Requests waiting for a thread",
+                executor::getQueueDepth, mode);
+        metrics.gauge("wms_executor_queue_capacity", "Request queue capacity (-1 when unbounded)",
+                executor::getQueueCapacity, mode);
+        metrics.counter("wms_executor_submitted_total", "Requests handed to the executor",
+                executor::getSubmittedCount, mode);
+        metrics.counter("wms_executor_rejected_total", "Requests that found the queue full",
+                executor::getRejectedCount, mode);
+    }
+
+    /** Route table used for dispatch; modules register their endpoints here before {@link #start()}. */
+    public Router getRouter() {
+        return router;
+    }
+
+    private void handleWithCors(Exchange exchange) throws IOException {
+        long startedAt = System.nanoTime();
+        Router.Match match = null;
+        Trace trace = tracer.begin(inboundTraceId(exchange));
+        try {
+            if (trace != null) {
+                exchange.setResponseHeader(Tracer.TRACE_HEADER, trace.getTraceId());
+            }
+            addCorsHeaders(exchange);
+
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
 
-        if ("OPTIONS".equals(exchange.getRequestMethod())) {
-            exchange.sendResponseHeaders(204, -1);
-            return;
+            match = router.match(exchange.getRequestMethod(), exchange.getPath());
+            dispatch(exchange, match);
+        } finally {
+            String route = recordRequest(exchange, match, startedAt);
+            tracer.finish(trace, exchange.getRequestMethod(), route, exchange.getResponseStatus());
         }
+    }
 
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
+    private static String inboundTraceId(Exchange exchange) {
+        String id = exchange.getRequestHeader(Tracer.TRACE_HEADER);
+        return id != null ? id : exchange.getRequestHeader("traceparent");
+    }
 
+    private void dispatch(Exchange exchange, Router.Match match) throws IOException {
+        Router.Route route = match.getRoute();
         try {
-            if (path.equals("/api/auth/login") && "POST".equals(method)) {
-                authController.login(exchange);
-            } else if (path.equals("/api/users") && "GET".equals(method)) {
-                userController.getAllUsers(exchange);
-            } else if (path.equals("/api/users") && "POST".equals(method)) {
-                userController.createUser(exchange);
-            } else if (path.matches("/api/users/\\d+") && "GET".equals(method)) {
-                String id = path.substring(path.lastIndexOf('/') + 1);
-                userController.getUserById(exchange, Integer.parseInt(id));
-            } else if (path.matches("/api/users/\\d+") && "PUT".equals(method)) {
-                String id = path.substring(path.lastIndexOf('/') + 1);
-                userController.updateUser(exchange, Integer.parseInt(id));
-            } else if (path.matches("/api/users/\\d+") && "DELETE".equals(method)) {
-                String id = path.substring(path.lastIndexOf('/') + 1);
-                userController.deleteUser(exchange, Integer.parseInt(id));
-            } else {
-                sendResponse(exchange, 404, "{\"error\":\"Not found\"}");
+            if (route == null) {
+                if (match.isPathFound()) {
+                    exchange.addResponseHeader("Allow", match.getAllowedMethods());
+                    sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+                } else {
+                    sendResponse(exchange, 404, "{\"error\":\"Not found\"}");
+                }
+                return;
+            }
+            if (route.getPermission() != null) {
+                try (Span span = Tracer.span("authorize")) {
+                    if (!authorizer.authorize(exchange, route.getPermission())) {
+                        return;
+                    }
+                }
+            }
+            try (Span span = Tracer.span("handler")) {
+                route.getHandler().handle(exchange, match.getParams());
             }
         } catch (Exception e) {
+            metrics.counter("wms_http_exceptions_total", "Unhandled exceptions by route and exception class",
+                    "route", route == null ? "unmatched" : route.getPattern(),
+                    "exception", e.getClass().getSimpleName()).increment();
             e.printStackTrace();
-            sendResponse(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            if (exchange.isResponseStarted()) {
+                exchange.abort();
+            } else {
+                sendResponse(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            }
         }
     }
 
-    private void addCorsHeaders(HttpExchange exchange) {
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", corsOrigins);
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-        exchange.getResponseHeaders().add("Access-Control-Max-Age", "3600");
+    /**
+     * Records latency by method, route pattern and status. Unknown paths share one
+     * label so scanners cannot grow the series count; status 0 means the handler
+     * returned without responding. Returns the route label.
+     */
+    private String recordRequest(Exchange exchange, Router.Match match, long startedAt) {
+        String route;
+        if (match == null) {
+            route = "preflight";
+        } else if (match.getRoute() != null) {
+            route = match.getRoute().getPattern();
+        } else {
+            route = "unmatched";
+        }
+        metrics.histogram("wms_http_request_duration_seconds", "Request latency by method, route and status",
+                "method", exchange.getRequestMethod(), "route", route,
+                "status", Integer.toString(exchange.getResponseStatus())).recordSince(startedAt);
+        return route;
     }
 
-    public static void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().add("Content-Type", "application/json");
+    private void addCorsHeaders(Exchange exchange) {
+        exchange.addResponseHeader("Access-Control-Allow-Origin", corsOrigins);
+        exchange.addResponseHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        exchange.addResponseHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Trace-Id");
+        exchange.addResponseHeader("Access-Control-Max-Age", "3600");
+        exchange.addResponseHeader("Access-Control-Expose-Headers", "X-Next-Cursor, ETag, X-Trace-Id");
+    }
+
+    public static void sendResponse(Exchange exchange, int statusCode, String response) throws IOException {
+        exchange.addResponseHeader("Content-Type", "application/json");
         byte[] bytes = response.getBytes();
         exchange.sendResponseHeaders(statusCode, bytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
@@ -95,14 +223,73 @@ public class HttpServer {
         }
     }
 
-    public static String getRequestBody(HttpExchange exchange) throws IOException {
+    /**
+     * Sends the response headers without a content length, so the body is written
+     * with chunked transfer encoding. The caller must close the returned stream.
+     */
+    public static OutputStream startChunkedResponse(Exchange exchange, int statusCode, String contentType)
+            throws IOException {
+        exchange.addResponseHeader("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, 0);
+        return exchange.getResponseBody();
+    }
+
+    /**
+     * Sets a strong validator on the response. {@code no-cache} lets clients keep the body
+     * but makes them revalidate with {@code If-None-Match} before reusing it.
+     */
+    public static void setETag(Exchange exchange, String etag) {
+        exchange.setResponseHeader("ETag", etag);
+        exchange.setResponseHeader("Cache-Control", "private, no-cache");
+    }
+
+    /** True if the request's {@code If-None-Match} lists {@code etag} or is {@code *}. */
+    public static boolean matchesETag(Exchange exchange, String etag) {
+        String header = exchange.getRequestHeader("If-None-Match");
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void sendNotModified(Exchange exchange, String etag) throws IOException {
+        setETag(exchange, etag);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+    }
+
+    public static String getRequestBody(Exchange exchange) throws IOException {
         try (InputStream is = exchange.getRequestBody()) {
             return new String(is.readAllBytes());
         }
     }
 
-    public static String getAuthToken(HttpExchange exchange) {
-        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
+    public static Map<String, String> getQueryParams(Exchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            params.putIfAbsent(key, value);
+        }
+        return params;
+    }
+
+    public static String getAuthToken(Exchange exchange) {
+        String authHeader = exchange.getRequestHeader("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             return authHeader.substring(7);
         }
@@ -110,11 +297,20 @@ public class HttpServer {
     }
 
     public void start() {
-        server.start();
+        engine.start();
     }
 
     public void stop() {
-        server.stop(0);
+        engine.stop();
+        executor.shutdown(5000);
+    }
+
+    public ServerExecutor getExecutor() {
+        return executor;
+    }
+
+    public HttpEngine getEngine() {
+        return engine;
     }
 }
 
@@ -0,0 +1,126 @@
+package com.wms.server;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link Exchange} backed by the JDK's {@link HttpExchange}. The response body is
+ * wrapped so {@link #abort()} can make closing it fail, which makes the JDK server close
+ * the connection instead of writing the terminating chunk.
+ */
+class JdkExchange implements Exchange {
+    private final HttpExchange exchange;
+    private final AbortableStream responseBody;
+    private int status;
+
+    JdkExchange(HttpExchange exchange) {
+        this.exchange = exchange;
+        this.responseBody = new AbortableStream(exchange.getResponseBody());
+        exchange.setStreams(null, responseBody);
+    }
+
+    private static final class AbortableStream extends FilterOutputStream {
+        private volatile boolean aborted;
+
+        AbortableStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (aborted) {
+                throw new IOException("Response aborted");
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (aborted) {
+                throw new IOException("Response aborted");
+            }
+            out.close();
+        }
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return exchange.getRequestMethod();
+    }
+
+    @Override
+    public String getPath() {
+        return exchange.getRequestURI().getPath();
+    }
+
+    @Override
+    public String getRawQuery() {
+        return exchange.getRequestURI().getRawQuery();
+    }
+
+    @Override
+    public String getRequestHeader(String name) {
+        return exchange.getRequestHeaders().getFirst(name);
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return exchange.getRequestBody();
+    }
+
+    @Override
+    public void setResponseHeader(String name, String value) {
+        exchange.getResponseHeaders().set(name, value);
+    }
+
+    @Override
+    public void addResponseHeader(String name, String value) {
+        exchange.getResponseHeaders().add(name, value);
+    }
+
+    @Override
+    public void sendResponseHeaders(int statusCode, long length) throws IOException {
+        status = statusCode;
+        exchange.sendResponseHeaders(statusCode, length);
+    }
+
+    @Override
+    public boolean isResponseStarted() {
+        return status != 0;
+    }
+
+    @Override
+    public int getResponseStatus() {
+        return status;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return exchange.getAttribute(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        exchange.setAttribute(name, value);
+    }
+
+    @Override
+    public void close() {
+        exchange.close();
+    }
+
+    @Override
+    public void abort() {
+        responseBody.aborted = true;
+        exchange.close();
+    }
+}
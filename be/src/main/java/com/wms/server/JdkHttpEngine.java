@@ -0,0 +1,47 @@
+package com.wms.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * Engine backed by {@code com.sun.net.httpserver.HttpServer}. Requests the executor had
+ * no room for are answered 503 without reaching the handler.
+ */
+public class JdkHttpEngine implements HttpEngine {
+    private final com.sun.net.httpserver.HttpServer server;
+
+    public JdkHttpEngine(int port, Executor executor, Handler handler) throws IOException {
+        this.server = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", exchange -> {
+            try {
+                if (ServerExecutor.isRejectedTask()) {
+                    byte[] body = "{\"error\":\"Server is overloaded\"}".getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    exchange.sendResponseHeaders(503, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                    return;
+                }
+                handler.handle(new JdkExchange(exchange));
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(executor);
+    }
+
+    @Override
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,1022 @@
+package com.wms.server;
+
+import com.wms.metrics.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/1.1 engine on a single {@code java.nio} selector thread. The selector only moves
+ * bytes: it reads into pooled direct buffers, parses requests and drains response
+ * buffers. Handlers run on the {@link ServerExecutor}, which must not run them on the
+ * selector thread, so a full executor answers 503 instead of stalling I/O.
+ *
+ * Connections are kept alive and may pipeline requests; each connection runs its
+ * requests one at a time so responses go out in request order. Request bodies need a
+ * {@code Content-Length}. Settings, all under {@code server.nio.*}: {@code bufferSize},
+ * {@code maxPooledBuffers}, {@code maxHeaderBytes}, {@code maxBodyBytes},
+ * {@code idleTimeoutMs}, {@code maxPipelined}, {@code writeHighWaterBytes}.
+ */
+public class NioHttpEngine implements HttpEngine {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ServerExecutor executor;
+    private final Handler handler;
+    private final BufferPool bufferPool;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong overloadCount = new AtomicLong();
+
+    private final int maxHeaderBytes;
+    private final long maxBodyBytes;
+    private final long idleTimeoutMs;
+    private final int maxPipelined;
+    private final long writeHighWater;
+
+    private volatile boolean running;
+    private Thread selectorThread;
+    private volatile String cachedDate = "";
+    private volatile long cachedDateSecond;
+
+    public NioHttpEngine(int port, ServerExecutor executor, Handler handler, Properties prop) throws IOException {
+        this.executor = executor;
+        this.handler = handler;
+        int bufferSize = Integer.parseInt(prop.getProperty("server.nio.bufferSize", "16384").trim());
+        int maxPooled = Integer.parseInt(prop.getProperty("server.nio.maxPooledBuffers", "1024").trim());
+        this.maxHeaderBytes = Integer.parseInt(prop.getProperty("server.nio.maxHeaderBytes", "16384").trim());
+        this.maxBodyBytes = Long.parseLong(prop.getProperty("server.nio.maxBodyBytes", "16777216").trim());
+        this.idleTimeoutMs = Long.parseLong(prop.getProperty("server.nio.idleTimeoutMs", "30000").trim());
+        this.maxPipelined = Integer.parseInt(prop.getProperty("server.nio.maxPipelined", "16").trim());
+        this.writeHighWater = Long.parseLong(prop.getProperty("server.nio.writeHighWaterBytes", "262144").trim());
+        this.bufferPool = new BufferPool(bufferSize, maxPooled);
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("wms_nio_open_connections", "Open client connections", this::getOpenConnections);
+        metrics.counter("wms_nio_accepted_total", "Accepted connections", this::getAcceptedCount);
+        metrics.counter("wms_nio_requests_total", "Parsed requests", this::getRequestCount);
+        metrics.counter("wms_nio_overloaded_total", "Requests answered 503 because the executor was full",
+                this::getOverloadCount);
+        metrics.gauge("wms_nio_pooled_buffers", "Direct buffers idle in the pool", this::getPooledBufferCount);
+        metrics.counter("wms_nio_allocated_buffers_total", "Direct buffers allocated", this::getAllocatedBufferCount);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        selectorThread = new Thread(this::runSelector, "http-nio-selector");
+        selectorThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getOpenConnections() {
+        return connections.size();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getOverloadCount() {
+        return overloadCount.get();
+    }
+
+    public int getPooledBufferCount() {
+        return bufferPool.getPooledCount();
+    }
+
+    public long getAllocatedBufferCount() {
+        return bufferPool.getAllocatedCount();
+    }
+
+    private void runSelector() {
+        long lastSweep = System.currentTimeMillis();
+        while (running) {
+            try {
+                selector.select(1000);
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= 1000) {
+                    lastSweep = now;
+                    closeIdle(now);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            acceptedCount.incrementAndGet();
+        }
+    }
+
+    private void closeIdle(long now) {
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (connection.isIdle() && now - connection.lastActive > idleTimeoutMs) {
+                connection.close();
+            }
+        }
+    }
+
+    private void runOnSelector(Runnable task) {
+        if (Thread.currentThread() == selectorThread) {
+            task.run();
+        } else {
+            selectorTasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    private String httpDate() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != cachedDateSecond) {
+            cachedDate = HTTP_DATE.format(ZonedDateTime.now(ZoneOffset.UTC));
+            cachedDateSecond = second;
+        }
+        return cachedDate;
+    }
+
+    /** State of one client connection. Parsing runs on the selector; exchanges finish on workers. */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private byte[] in = new byte[4096];
+        private int inLength;
+        private long lastActive = System.currentTimeMillis();
+        private volatile boolean inputShutdown;
+        private volatile boolean readPaused;
+        private NioExchange partial;
+        private int partialHeaderEnd;
+        private long partialLength;
+        private boolean continueSent;
+
+        private final ArrayDeque<NioExchange> pending = new ArrayDeque<>();
+        private NioExchange current;
+
+        private final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final Object writeLock = new Object();
+        private volatile boolean closeAfterWrite;
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        synchronized boolean isIdle() {
+            return current == null && pending.isEmpty() && writes.isEmpty();
+        }
+
+        void onReadable() throws IOException {
+            ByteBuffer buffer = bufferPool.acquire();
+            try {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    inputShutdown = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    if (isIdle()) {
+                        close();
+                    } else {
+                        closeAfterWrite = true;
+                    }
+                    return;
+                }
+                buffer.flip();
+                ensureCapacity(inLength + buffer.remaining());
+                int count = buffer.remaining();
+                buffer.get(in, inLength, count);
+                inLength += count;
+            } finally {
+                bufferPool.release(buffer);
+            }
+            lastActive = System.currentTimeMillis();
+            parseRequests();
+        }
+
+        private void ensureCapacity(int size) {
+            if (size > in.length) {
+                byte[] grown = new byte[Math.max(size, in.length * 2)];
+                System.arraycopy(in, 0, grown, 0, inLength);
+                in = grown;
+            }
+        }
+
+        private void parseRequests() throws IOException {
+            while (inLength > 0 && !readPaused) {
+                if (partial == null && !parseNextHead()) {
+                    return;
+                }
+
+                NioExchange exchange = partial;
+                long total = partialHeaderEnd + partialLength;
+                if (inLength < total) {
+                    if (!continueSent && partialLength > 0 && isIdle()
+                            && "100-continue".equalsIgnoreCase(exchange.getRequestHeader("Expect"))) {
+                        continueSent = true;
+                        enqueue(ByteBuffer.wrap(CONTINUE));
+                    }
+                    return;
+                }
+
+                byte[] body = new byte[(int) partialLength];
+                System.arraycopy(in, partialHeaderEnd, body, 0, body.length);
+                consume((int) total);
+                partial = null;
+                continueSent = false;
+                exchange.body = body;
+                submit(exchange);
+
+                synchronized (this) {
+                    if (pending.size() >= maxPipelined) {
+                        pauseReading();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parses the head of the next request into {@link #partial}, kept until its body
+         * has arrived. Returns false if the head is incomplete or the stream was rejected.
+         */
+        private boolean parseNextHead() {
+            int headerEnd = indexOfHeaderEnd();
+            if (headerEnd < 0) {
+                if (inLength > maxHeaderBytes) {
+                    fail(431, "Request header too large");
+                }
+                return false;
+            }
+
+            NioExchange exchange;
+            try {
+                exchange = parseHead(headerEnd);
+            } catch (IllegalArgumentException e) {
+                fail(400, e.getMessage());
+                return false;
+            }
+
+            String transferEncoding = exchange.getRequestHeader("Transfer-Encoding");
+            if (transferEncoding != null && !"identity".equalsIgnoreCase(transferEncoding.trim())) {
+                fail(411, "Request body needs a Content-Length");
+                return false;
+            }
+            long contentLength;
+            try {
+                String header = exchange.getRequestHeader("Content-Length");
+                contentLength = header == null ? 0 : Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                contentLength = -1;
+            }
+            if (contentLength < 0) {
+                fail(400, "Invalid Content-Length");
+                return false;
+            }
+            if (contentLength > maxBodyBytes) {
+                fail(413, "Request body too large");
+                return false;
+            }
+
+            partial = exchange;
+            partialHeaderEnd = headerEnd;
+            partialLength = contentLength;
+            return true;
+        }
+
+        private int indexOfHeaderEnd() {
+            int limit = Math.min(inLength, maxHeaderBytes + 4);
+            for (int i = 3; i < limit; i++) {
+                if (in[i] == '\n' && in[i - 1] == '\r' && in[i - 2] == '\n' && in[i - 3] == '\r') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private void consume(int count) {
+            System.arraycopy(in, count, in, 0, inLength - count);
+            inLength -= count;
+            if (inLength == 0 && in.length > 65536) {
+                in = new byte[4096];
+            }
+        }
+
+        private NioExchange parseHead(int headerEnd) {
+            String head = new String(in, 0, headerEnd - 4, StandardCharsets.ISO_8859_1);
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                throw new IllegalArgumentException("Malformed request line");
+            }
+
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Malformed header");
+                }
+                headers.computeIfAbsent(lines[i].substring(0, colon).trim(), k -> new ArrayList<>(1))
+                        .add(lines[i].substring(colon + 1).trim());
+            }
+
+            String target = requestLine[1];
+            String path;
+            String rawQuery;
+            try {
+                URI uri = new URI(target);
+                path = uri.getPath();
+                rawQuery = uri.getRawQuery();
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Malformed request target");
+            }
+            if (path == null || !path.startsWith("/")) {
+                throw new IllegalArgumentException("Malformed request target");
+            }
+
+            boolean http10 = requestLine[2].equals("HTTP/1.0");
+            List<String> connection = headers.get("Connection");
+            String connectionHeader = connection == null ? "" : connection.get(0).toLowerCase();
+            boolean keepAlive = http10 ? connectionHeader.contains("keep-alive") : !connectionHeader.contains("close");
+
+            return new NioExchange(this, requestLine[0], path, rawQuery, headers, http10, keepAlive);
+        }
+
+        /** Rejects the stream: answers once earlier responses are out, then closes. */
+        private void fail(int status, String message) {
+            pauseReading();
+            inLength = 0;
+            partial = null;
+            NioExchange error = new NioExchange(this, "GET", "/", null,
+                    new TreeMap<>(String.CASE_INSENSITIVE_ORDER), false, false);
+            error.errorStatus = status;
+            error.errorMessage = message;
+            submit(error);
+        }
+
+        private void pauseReading() {
+            if (!readPaused && key.isValid()) {
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        private void resumeReading() {
+            if (readPaused && !inputShutdown && !closed && key.isValid()) {
+                readPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                try {
+                    parseRequests();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        private void submit(NioExchange exchange) {
+            NioExchange next = null;
+            synchronized (this) {
+                pending.add(exchange);
+                if (current == null) {
+                    current = pending.poll();
+                    next = current;
+                }
+            }
+            if (next != null) {
+                dispatch(next);
+            }
+        }
+
+        private void dispatch(NioExchange exchange) {
+            requestCount.incrementAndGet();
+            if (exchange.errorStatus != 0) {
+                exchange.sendError(exchange.errorStatus, exchange.errorMessage);
+                return;
+            }
+            if (!executor.tryExecute(() -> run(exchange))) {
+                overloadCount.incrementAndGet();
+                exchange.setResponseHeader("Retry-After", "1");
+                exchange.sendError(503, "Server is overloaded");
+            }
+        }
+
+        private void run(NioExchange exchange) {
+            try {
+                handler.handle(exchange);
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (exchange.isResponseStarted()) {
+                    // closing would end a chunked body cleanly and pass it off as complete
+                    exchange.abort();
+                } else {
+                    exchange.sendError(500, "Internal server error");
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /** Called once per exchange after its last byte has been queued. */
+        void onComplete(NioExchange exchange) {
+            NioExchange next;
+            boolean resume;
+            synchronized (this) {
+                if (!exchange.keepAlive) {
+                    pending.clear();
+                    current = null;
+                    next = null;
+                } else {
+                    next = pending.poll();
+                    current = next;
+                }
+                resume = readPaused && pending.size() < maxPipelined;
+            }
+
+            if (!exchange.keepAlive) {
+                runOnSelector(() -> {
+                    closeAfterWrite = true;
+                    if (writes.isEmpty()) {
+                        close();
+                    }
+                });
+                return;
+            }
+            if (resume && exchange.errorStatus == 0) {
+                runOnSelector(this::resumeReading);
+            }
+            if (next != null) {
+                dispatch(next);
+            } else if (inputShutdown) {
+                runOnSelector(() -> {
+                    closeAfterWrite = true;
+                    if (writes.isEmpty()) {
+                        close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Queues a filled buffer for the selector to write. Worker threads block here
+         * while more than {@code writeHighWaterBytes} are waiting, which throttles
+         * streaming responses to the speed of the client.
+         */
+        void enqueue(ByteBuffer buffer) throws IOException {
+            if (closed) {
+                bufferPool.release(buffer);
+                throw new ClosedChannelException();
+            }
+            pendingBytes.addAndGet(buffer.remaining());
+            writes.add(buffer);
+            if (writeScheduled.compareAndSet(false, true)) {
+                runOnSelector(this::enableWrite);
+            }
+
+            if (Thread.currentThread() != selectorThread && pendingBytes.get() > writeHighWater) {
+                synchronized (writeLock) {
+                    while (!closed && pendingBytes.get() > writeHighWater / 2) {
+                        try {
+                            writeLock.wait(1000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while writing response");
+                        }
+                    }
+                }
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+            }
+        }
+
+        private void enableWrite() {
+            if (closed || !key.isValid()) {
+                return;
+            }
+            try {
+                onWritable();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = writes.peek()) != null) {
+                int written = channel.write(buffer);
+                if (written > 0) {
+                    pendingBytes.addAndGet(-written);
+                    lastActive = System.currentTimeMillis();
+                }
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                writes.poll();
+                if (buffer.isDirect()) {
+                    bufferPool.release(buffer);
+                }
+            }
+
+            synchronized (writeLock) {
+                writeLock.notifyAll();
+            }
+
+            if (writes.isEmpty()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                writeScheduled.set(false);
+                if (!writes.isEmpty() && writeScheduled.compareAndSet(false, true)) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                } else if (closeAfterWrite && isIdle()) {
+                    close();
+                }
+            } else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already closing
+            }
+            ByteBuffer buffer;
+            while ((buffer = writes.poll()) != null) {
+                if (buffer.isDirect()) {
+                    bufferPool.release(buffer);
+                }
+            }
+            synchronized (writeLock) {
+                writeLock.notifyAll();
+            }
+        }
+    }
+
+    private final class NioExchange implements Exchange {
+        private final Connection connection;
+        private final String method;
+        private final String path;
+        private final String rawQuery;
+        private final Map<String, List<String>> requestHeaders;
+        private final Map<String, List<String>> responseHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final boolean http10;
+        private boolean keepAlive;
+        private byte[] body = new byte[0];
+        private int errorStatus;
+        private String errorMessage;
+
+        private ResponseStream responseBody;
+        private int status;
+        private volatile boolean closed;
+
+        NioExchange(Connection connection, String method, String path, String rawQuery,
+                    Map<String, List<String>> requestHeaders, boolean http10, boolean keepAlive) {
+            this.connection = connection;
+            this.method = method;
+            this.path = path;
+            this.rawQuery = rawQuery;
+            this.requestHeaders = requestHeaders;
+            this.http10 = http10;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getRawQuery() {
+            return rawQuery;
+        }
+
+        @Override
+        public String getRequestHeader(String name) {
+            List<String> values = requestHeaders.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void setResponseHeader(String name, String value) {
+            List<String> values = new ArrayList<>(1);
+            values.add(value);
+            responseHeaders.put(name, values);
+        }
+
+        @Override
+        public void addResponseHeader(String name, String value) {
+            responseHeaders.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+        }
+
+        @Override
+        public void sendResponseHeaders(int statusCode, long length) throws IOException {
+            if (responseBody != null) {
+                throw new IOException("Response headers already sent");
+            }
+            boolean noBody = length < 0 || statusCode == 204 || statusCode == 304 || statusCode < 200;
+            boolean chunked = !noBody && length == 0 && !http10;
+            if (!noBody && length == 0 && http10) {
+                keepAlive = false;
+            }
+
+            StringBuilder head = new StringBuilder(256);
+            head.append("HTTP/1.1 ").append(statusCode).append(' ').append(reasonPhrase(statusCode)).append("\r\n");
+            head.append("Date: ").append(httpDate()).append("\r\n");
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                for (String value : header.getValue()) {
+                    head.append(header.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+            if (chunked) {
+                head.append("Transfer-Encoding: chunked\r\n");
+            } else if (length > 0) {
+                head.append("Content-Length: ").append(length).append("\r\n");
+            } else if (noBody && statusCode != 204 && statusCode != 304) {
+                head.append("Content-Length: 0\r\n");
+            }
+            // an HTTP/1.0 streamed body has no length header; closing the connection ends it
+            head.append(keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+            head.append("\r\n");
+
+            status = statusCode;
+            responseBody = new ResponseStream(connection, chunked, noBody);
+            responseBody.emit(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public boolean isResponseStarted() {
+            return responseBody != null;
+        }
+
+        @Override
+        public int getResponseStatus() {
+            return status;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            if (responseBody == null) {
+                throw new IllegalStateException("Response headers not sent");
+            }
+            return responseBody;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                if (responseBody != null) {
+                    // close runs on the handler's thread; release what an abort left behind
+                    responseBody.discard();
+                }
+                return;
+            }
+            try {
+                if (responseBody == null) {
+                    keepAlive = false;
+                    sendResponseHeaders(500, -1);
+                }
+                if (responseBody != null) {
+                    responseBody.close();
+                }
+            } catch (IOException e) {
+                keepAlive = false;
+            }
+            closed = true;
+            connection.onComplete(this);
+        }
+
+        @Override
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            keepAlive = false;
+            if (responseBody != null) {
+                responseBody.abort();
+            }
+            runOnSelector(connection::close);
+        }
+
+        void sendError(int status, String message) {
+            try {
+                if (status >= 400 && status != 503) {
+                    keepAlive = false;
+                }
+                byte[] bytes = ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+                setResponseHeader("Content-Type", "application/json");
+                sendResponseHeaders(status, bytes.length);
+                responseBody.write(bytes);
+            } catch (IOException e) {
+                keepAlive = false;
+            }
+            close();
+        }
+    }
+
+    /**
+     * Response body writer. Bytes are copied into pooled direct buffers that are handed
+     * to the selector once full or on {@link #flush()}; chunked bodies are framed from a
+     * heap staging buffer so every chunk knows its size.
+     */
+    private final class ResponseStream extends OutputStream {
+        private final Connection connection;
+        private final boolean chunked;
+        private final boolean noBody;
+        private final byte[] staging;
+        private int staged;
+        private ByteBuffer out;
+        private boolean closed;
+        private volatile boolean aborted;
+
+        ResponseStream(Connection connection, boolean chunked, boolean noBody) {
+            this.connection = connection;
+            this.chunked = chunked;
+            this.noBody = noBody;
+            this.staging = chunked ? new byte[bufferPool.getBufferSize() - 16] : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkAborted();
+            if (closed) {
+                throw new IOException("Response body closed");
+            }
+            if (noBody) {
+                return;
+            }
+            if (!chunked) {
+                emit(b, off, len);
+                return;
+            }
+            while (len > 0) {
+                int n = Math.min(len, staging.length - staged);
+                System.arraycopy(b, off, staging, staged, n);
+                staged += n;
+                off += n;
+                len -= n;
+                if (staged == staging.length) {
+                    emitChunk();
+                }
+            }
+        }
+
+        private void emitChunk() throws IOException {
+            if (staged == 0) {
+                return;
+            }
+            emit(Integer.toHexString(staged).getBytes(StandardCharsets.ISO_8859_1));
+            emit(CRLF);
+            emit(staging, 0, staged);
+            emit(CRLF);
+            staged = 0;
+        }
+
+        void emit(byte[] b) throws IOException {
+            emit(b, 0, b.length);
+        }
+
+        private void emit(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (out == null) {
+                    out = bufferPool.acquire();
+                }
+                int n = Math.min(len, out.remaining());
+                out.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!out.hasRemaining()) {
+                    handOver();
+                }
+            }
+        }
+
+        private void handOver() throws IOException {
+            if (out != null && out.position() > 0) {
+                ByteBuffer full = out;
+                out = null;
+                full.flip();
+                connection.enqueue(full);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            checkAborted();
+            if (chunked) {
+                emitChunk();
+            }
+            handOver();
+        }
+
+        /**
+         * Marks the stream aborted from any thread. The writing thread finds out on its next
+         * call and releases its buffer then, since only it may touch the buffer.
+         */
+        void abort() {
+            aborted = true;
+        }
+
+        private void checkAborted() throws IOException {
+            if (aborted) {
+                discard();
+                throw new IOException("Response aborted");
+            }
+        }
+
+        /** Drops whatever has not been handed to the connection yet; the stream is unusable after. */
+        void discard() {
+            closed = true;
+            if (out != null) {
+                bufferPool.release(out);
+                out = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            checkAborted();
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (chunked) {
+                    emitChunk();
+                    emit(LAST_CHUNK);
+                }
+                handOver();
+            } finally {
+                if (out != null) {
+                    bufferPool.release(out);
+                    out = null;
+                }
+            }
+        }
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 204: return "No Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 410: return "Gone";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            default: return "Status " + status;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.wms.server;
+
+import java.util.Collections;
+import java.util.Map;
+
+/** Path parameters captured by {@link Router}, already converted to their declared type. */
+public class PathParams {
+    static final PathParams EMPTY = new PathParams(Collections.emptyMap());
+
+    private final Map<String, Object> values;
+
+    PathParams(Map<String, Object> values) {
+        this.values = values;
+    }
+
+    public int getInt(String name) {
+        return (Integer) require(name);
+    }
+
+    public long getLong(String name) {
+        return (Long) require(name);
+    }
+
+    public String getString(String name) {
+        return String.valueOf(require(name));
+    }
+
+    public boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    private Object require(String name) {
+        Object value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing path parameter: " + name);
+        }
+        return value;
+    }
+}
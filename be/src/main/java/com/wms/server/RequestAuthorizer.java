@@ -0,0 +1,70 @@
+package com.wms.server;
+
+import com.google.gson.Gson;
+import com.wms.model.AuthPrincipal;
+import com.wms.model.CatalogSnapshot;
+import com.wms.service.AuthService;
+import com.wms.service.RoleCatalog;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Authenticates the bearer token and checks the route's required permission before a
+ * controller runs. Permissions are checked against the role masks compiled by the
+ * current {@link CatalogSnapshot}, so a check is a bit test with no parsing or I/O.
+ */
+public class RequestAuthorizer {
+    public static final String PRINCIPAL_ATTRIBUTE = "wms.principal";
+
+    private final AuthService authService;
+    private final RoleCatalog roleCatalog;
+    private final Gson gson;
+
+    public RequestAuthorizer() {
+        this.authService = new AuthService();
+        this.roleCatalog = RoleCatalog.getInstance();
+        this.gson = new Gson();
+    }
+
+    /**
+     * Returns true when the request may proceed. Otherwise a 401 or 403 response has
+     * already been sent. The authenticated principal is stored on the exchange under
+     * {@link #PRINCIPAL_ATTRIBUTE}.
+     */
+    public boolean authorize(Exchange exchange, String permission) throws IOException {
+        String token = HttpServer.getAuthToken(exchange);
+        if (token == null) {
+            HttpServer.sendResponse(exchange, 401,
+                gson.toJson(Map.of("error", "No authorization token provided")));
+            return false;
+        }
+
+        AuthPrincipal principal;
+        try {
+            principal = authService.authenticate(token);
+        } catch (Exception e) {
+            HttpServer.sendResponse(exchange, 401,
+                gson.toJson(Map.of("error", "Invalid or expired token")));
+            return false;
+        }
+
+        if (permission != null && !isGranted(principal, permission)) {
+            HttpServer.sendResponse(exchange, 403,
+                gson.toJson(Map.of("error", "Missing permission: " + permission)));
+            return false;
+        }
+
+        exchange.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+        return true;
+    }
+
+    public boolean isGranted(AuthPrincipal principal, String permission) {
+        CatalogSnapshot catalog = roleCatalog.get();
+        return catalog.getPermissionMask(principal.getRoles()).contains(catalog.getPermissionBit(permission));
+    }
+
+    public static AuthPrincipal getPrincipal(Exchange exchange) {
+        return (AuthPrincipal) exchange.getAttribute(PRINCIPAL_ATTRIBUTE);
+    }
+}
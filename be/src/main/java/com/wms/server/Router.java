@@ -0,0 +1,250 @@
+package com.wms.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Route table built once at startup. Paths are stored as a tree of segments: literal
+ * segments are looked up in a map and {@code {name}} / {@code {name:int}} segments
+ * capture a path parameter, so a lookup costs one step per path segment however many
+ * routes are registered. Literal segments take precedence over parameters.
+ */
+public class Router {
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(Exchange exchange, PathParams params) throws Exception;
+    }
+
+    /** A registered endpoint: handler plus the permission it requires, or null for a public route. */
+    public static final class Route {
+        private final String method;
+        private final String pattern;
+        private final String permission;
+        private final Handler handler;
+
+        Route(String method, String pattern, String permission, Handler handler) {
+            this.method = method;
+            this.pattern = pattern;
+            this.permission = permission;
+            this.handler = handler;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public String getPermission() {
+            return permission;
+        }
+
+        public Handler getHandler() {
+            return handler;
+        }
+    }
+
+    /**
+     * Outcome of a lookup. {@link #getRoute()} is null when nothing matched: either the
+     * path is unknown ({@link #isPathFound()} false) or the path exists but not for the
+     * request method, in which case {@link #getAllowedMethods()} lists what it supports.
+     */
+    public static final class Match {
+        private final Route route;
+        private final PathParams params;
+        private final boolean pathFound;
+        private final String allowedMethods;
+
+        private Match(Route route, PathParams params, boolean pathFound, String allowedMethods) {
+            this.route = route;
+            this.params = params;
+            this.pathFound = pathFound;
+            this.allowedMethods = allowedMethods;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        public PathParams getParams() {
+            return params;
+        }
+
+        public boolean isPathFound() {
+            return pathFound;
+        }
+
+        public String getAllowedMethods() {
+            return allowedMethods;
+        }
+    }
+
+    private enum ParamType {
+        STRING, INT, LONG
+    }
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        final Map<String, Route> methods = new LinkedHashMap<>();
+        Node param;
+        String paramName;
+        ParamType paramType;
+        String allowHeader;
+    }
+
+    private static final Match NOT_FOUND = new Match(null, PathParams.EMPTY, false, null);
+
+    private final Node root = new Node();
+    private final List<Route> routes = new ArrayList<>();
+
+    /** Registers a route open to anonymous callers. */
+    public Router add(String method, String pattern, Handler handler) {
+        return add(method, pattern, null, handler);
+    }
+
+    /** Registers a route that requires an authenticated caller holding {@code permission}. */
+    public synchronized Router add(String method, String pattern, String permission, Handler handler) {
+        Node node = root;
+        for (String segment : split(pattern)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String spec = segment.substring(1, segment.length() - 1);
+                int colon = spec.indexOf(':');
+                String name = colon < 0 ? spec : spec.substring(0, colon);
+                ParamType type = colon < 0 ? ParamType.STRING : parseType(spec.substring(colon + 1), pattern);
+                if (node.param == null) {
+                    node.param = new Node();
+                    node.paramName = name;
+                    node.paramType = type;
+                } else if (!node.paramName.equals(name) || node.paramType != type) {
+                    throw new IllegalArgumentException("Conflicting path parameter in " + pattern);
+                }
+                node = node.param;
+            } else {
+                node = node.literals.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+
+        String upper = method.toUpperCase();
+        if (node.methods.containsKey(upper)) {
+            throw new IllegalArgumentException("Duplicate route: " + upper + " " + pattern);
+        }
+        Route route = new Route(upper, pattern, permission, handler);
+        node.methods.put(upper, route);
+        TreeSet<String> allowed = new TreeSet<>(node.methods.keySet());
+        allowed.add("OPTIONS");
+        node.allowHeader = String.join(", ", allowed);
+        routes.add(route);
+        return this;
+    }
+
+    public Match match(String method, String path) {
+        List<String> segments = split(path);
+        Map<String, Object> values = new HashMap<>(4);
+        Node node = find(root, segments, 0, values);
+        if (node == null || node.methods.isEmpty()) {
+            return NOT_FOUND;
+        }
+        Route route = node.methods.get(method);
+        if (route == null) {
+            return new Match(null, PathParams.EMPTY, true, node.allowHeader);
+        }
+        return new Match(route, values.isEmpty() ? PathParams.EMPTY : new PathParams(values), true, node.allowHeader);
+    }
+
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    private static Node find(Node node, List<String> segments, int index, Map<String, Object> values) {
+        if (index == segments.size()) {
+            return node;
+        }
+        String segment = segments.get(index);
+
+        Node literal = node.literals.get(segment);
+        if (literal != null) {
+            Node found = find(literal, segments, index + 1, values);
+            if (found != null && !found.methods.isEmpty()) {
+                return found;
+            }
+        }
+
+        if (node.param != null) {
+            Object value = convert(segment, node.paramType);
+            if (value != null) {
+                values.put(node.paramName, value);
+                Node found = find(node.param, segments, index + 1, values);
+                if (found != null && !found.methods.isEmpty()) {
+                    return found;
+                }
+                values.remove(node.paramName);
+            }
+        }
+        return null;
+    }
+
+    private static Object convert(String segment, ParamType type) {
+        switch (type) {
+            case INT:
+            case LONG:
+                if (segment.isEmpty() || segment.length() > 19) {
+                    return null;
+                }
+                for (int i = 0; i < segment.length(); i++) {
+                    char c = segment.charAt(i);
+                    if (c < '0' || c > '9') {
+                        return null;
+                    }
+                }
+                long value;
+                try {
+                    value = Long.parseLong(segment);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (type == ParamType.INT) {
+                    return value <= Integer.MAX_VALUE ? (Object) (int) value : null;
+                }
+                return value;
+            default:
+                return segment.isEmpty() ? null : segment;
+        }
+    }
+
+    private static ParamType parseType(String type, String pattern) {
+        switch (type) {
+            case "int":
+                return ParamType.INT;
+            case "long":
+                return ParamType.LONG;
+            case "string":
+                return ParamType.STRING;
+            default:
+                throw new IllegalArgumentException("Unknown parameter type '" + type + "' in " + pattern);
+        }
+    }
+
+    /** Splits on '/' without a regex, ignoring a trailing slash. */
+    private static List<String> split(String path) {
+        List<String> segments = new ArrayList<>(6);
+        int start = path.startsWith("/") ? 1 : 0;
+        int length = path.endsWith("/") && path.length() > 1 ? path.length() - 1 : path.length();
+        while (start < length) {
+            int slash = path.indexOf('/', start);
+            if (slash < 0 || slash > length) {
+                slash = length;
+            }
+            segments.add(path.substring(start, slash));
+            start = slash + 1;
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,205 @@
+package com.wms.server;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor the HTTP server dispatches requests on.
+ *
+ * Two modes, selected by {@code server.executor.mode}:
+ * <ul>
+ *   <li>{@code bounded} - fixed platform thread pool with a bounded queue. When the
+ *   queue is full the request is handed to a two-thread overflow pool that only answers
+ *   it with 503 (see {@link #isRejectedTask()}), so the accepting thread never runs a
+ *   request itself. Once both are full, or after shutdown, {@link #execute(Runnable)}
+ *   throws and the caller closes the connection.</li>
+ *   <li>{@code virtual} - one virtual thread per request. Needs a Java 21+ runtime;
+ *   on older runtimes it falls back to {@code bounded}.</li>
+ * </ul>
+ */
+public class ServerExecutor implements Executor {
+    public static final String MODE_BOUNDED = "bounded";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final String mode;
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor pool;
+    private final ThreadPoolExecutor overflow;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private static final ThreadLocal<Boolean> NO_OVERFLOW = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+    private static final int OVERFLOW_THREADS = 2;
+
+    private ServerExecutor(String mode, ExecutorService delegate, ThreadPoolExecutor pool,
+                           ThreadPoolExecutor overflow) {
+        this.mode = mode;
+        this.delegate = delegate;
+        this.pool = pool;
+        this.overflow = overflow;
+    }
+
+    public static ServerExecutor fromProperties(Properties prop) {
+        String mode = prop.getProperty("server.executor.mode", MODE_BOUNDED).trim().toLowerCase();
+        int threads = Integer.parseInt(prop.getProperty("server.executor.threads", "0").trim());
+        int queueSize = Integer.parseInt(prop.getProperty("server.executor.queueSize", "500").trim());
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() * 4;
+        }
+
+        if (MODE_VIRTUAL.equals(mode)) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return new ServerExecutor(MODE_VIRTUAL, virtual, null, null);
+            }
+            System.err.println("Virtual threads are not available on Java "
+                    + Runtime.version().feature() + ", using bounded executor");
+        } else if (!MODE_BOUNDED.equals(mode)) {
+            throw new IllegalArgumentException("Unknown server.executor.mode: " + mode);
+        }
+        return bounded(threads, queueSize);
+    }
+
+    public static ServerExecutor bounded(int threads, int queueSize) {
+        ServerExecutor[] self = new ServerExecutor[1];
+        ThreadPoolExecutor overflow = new ThreadPoolExecutor(OVERFLOW_THREADS, OVERFLOW_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), namedThreads("http-overflow-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        RejectedExecutionHandler onFull = (task, executor) -> {
+            self[0].rejected.incrementAndGet();
+            if (NO_OVERFLOW.get() != null || executor.isShutdown()) {
+                throw new RejectedExecutionException("Server executor is saturated");
+            }
+            overflow.execute(() -> {
+                REJECTED.set(Boolean.TRUE);
+                try {
+                    task.run();
+                } finally {
+                    REJECTED.remove();
+                }
+            });
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), namedThreads("http-worker-"), onFull);
+        self[0] = new ServerExecutor(MODE_BOUNDED, pool, pool, overflow);
+        return self[0];
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        };
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.incrementAndGet();
+        delegate.execute(() -> {
+            active.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * True on a thread running a task the pool had no room for. The engine should answer
+     * the request with 503 and {@code Retry-After} without handling it.
+     */
+    public static boolean isRejectedTask() {
+        return REJECTED.get() != null;
+    }
+
+    /**
+     * Like {@link #execute(Runnable)} but never uses the overflow pool: returns false
+     * instead when the queue is full, and the caller answers 503 itself. For callers
+     * such as a selector loop that can reply without a thread.
+     */
+    public boolean tryExecute(Runnable command) {
+        NO_OVERFLOW.set(Boolean.TRUE);
+        try {
+            execute(command);
+            return true;
+        } catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            return false;
+        } finally {
+            NO_OVERFLOW.remove();
+        }
+    }
+
+    public void shutdown(long timeoutMs) {
+        delegate.shutdown();
+        if (overflow != null) {
+            overflow.shutdown();
+        }
+        try {
+            if (!delegate.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getQueueDepth() {
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+
+    /** Maximum number of worker threads, or -1 when unbounded (virtual threads). */
+    public int getMaxThreads() {
+        return pool != null ? pool.getMaximumPoolSize() : -1;
+    }
+
+    public int getQueueCapacity() {
+        return pool != null ? pool.getQueue().size() + pool.getQueue().remainingCapacity() : -1;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
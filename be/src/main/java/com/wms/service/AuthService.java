@@ -1,59 +1,274 @@
 package com.wms.service;
 
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.wms.model.AuthPrincipal;
 import com.wms.model.User;
+import com.wms.repository.Repositories;
 import com.wms.repository.UserRepository;
+import com.wms.tracing.Span;
+import com.wms.tracing.Tracer;
 import com.wms.util.JwtUtil;
-import com.wms.util.PasswordUtil;
+import com.wms.util.OverloadedException;
+import com.wms.util.PasswordHashingPool;
 
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class AuthService {
+    /** Refresh tokens rotated within the grace window, by token id; shared by every instance. */
+    private static final Map<String, Rotation> RECENT_ROTATIONS = new ConcurrentHashMap<>();
+
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
+    private final UserCache userCache;
+    private final PasswordHashingPool hashingPool;
+    private final UserBatchLoader userLoader;
+    private final TokenRevocationList revocations;
+    private boolean claimsMode;
+    private long refreshGraceMs;
+
+    /** The outcome of one refresh token's rotation, handed to duplicates inside the grace window. */
+    private static final class Rotation {
+        final CompletableFuture<Map<String, Object>> tokens = new CompletableFuture<>();
+        final long expiresAt;
+
+        Rotation(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
 
     public AuthService() {
-        this.userRepository = new UserRepository();
+        this.userRepository = Repositories.users();
         this.jwtUtil = JwtUtil.getInstance();
+        this.userCache = UserCache.getInstance();
+        this.userLoader = UserBatchLoader.getInstance();
+        this.hashingPool = PasswordHashingPool.getInstance();
+        this.revocations = TokenRevocationList.getInstance();
+        loadProperties();
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.claimsMode = "claims".equalsIgnoreCase(prop.getProperty("auth.mode", "claims").trim());
+            this.refreshGraceMs = Long.parseLong(prop.getProperty("auth.refreshGraceMs", "5000").trim());
+        } catch (Exception e) {
+            this.claimsMode = true;
+            this.refreshGraceMs = 5000;
+        }
     }
 
     public Map<String, Object> login(String username, String password) throws SQLException {
-        User user = userRepository.findByUsername(username);
+        try (Span span = Tracer.span("service.login")) {
+            User user = userRepository.findByUsername(username);
 
-        if (user == null) {
-            throw new RuntimeException("Invalid username or password");
+            if (user == null) {
+                throw new RuntimeException("Invalid username or password");
+            }
+
+            if (!hashingPool.checkPassword(password, user.getPasswordHash())) {
+                throw new RuntimeException("Invalid username or password");
+            }
+
+            if (user.getStatusId() != 1) {
+                throw new RuntimeException("User account is not active");
+            }
+
+            User userWithDetails = userRepository.findById(user.getId());
+            userCache.put(userWithDetails);
+
+            Map<String, Object> response = issueTokens(userWithDetails, UUID.randomUUID().toString());
+            response.put("user", createUserResponse(userWithDetails));
+
+            return response;
+        }
+    }
+
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token of the
+     * same session. Each refresh token works once: presenting one that was already used
+     * revokes the whole session, since either the client or a thief holds a copy. The
+     * exception is a repeat within {@code auth.refreshGraceMs} of the rotation, which is
+     * what tabs and micro-frontends sharing the token cookie send when they refresh at
+     * the same time: it gets the same new pair instead. The user is reloaded, so a
+     * deactivated user cannot refresh.
+     */
+    public Map<String, Object> refresh(String refreshToken) throws SQLException {
+        DecodedJWT jwt = verify(refreshToken);
+        if (!JwtUtil.isRefreshToken(jwt)) {
+            throw new RuntimeException("Not a refresh token");
+        }
+        String sessionId = jwt.getClaim("sid").asString();
+        Integer userId = jwt.getClaim("userId").asInt();
+        if (revocations.isSessionRevoked(sessionId) || revocations.isUserRevoked(userId, jwt.getIssuedAt().getTime())) {
+            throw new RuntimeException("Refresh token has been revoked");
         }
 
-        if (!PasswordUtil.checkPassword(password, user.getPasswordHash())) {
-            throw new RuntimeException("Invalid username or password");
+        long now = System.currentTimeMillis();
+        RECENT_ROTATIONS.values().removeIf(r -> r.expiresAt <= now);
+        Rotation rotation = new Rotation(now + refreshGraceMs);
+        Rotation earlier = refreshGraceMs > 0 ? RECENT_ROTATIONS.putIfAbsent(jwt.getId(), rotation) : null;
+        if (earlier != null) {
+            return awaitRotation(earlier);
+        }
+        if (!revocations.revokeToken(jwt.getId(), jwt.getExpiresAt().getTime())) {
+            RuntimeException reused = new RuntimeException("Refresh token has already been used");
+            rotation.tokens.completeExceptionally(reused);
+            RECENT_ROTATIONS.remove(jwt.getId(), rotation);
+            revocations.revokeSession(sessionId, sessionExpiry());
+            throw reused;
         }
 
-        if (user.getStatusId() != 1) {
-            throw new RuntimeException("User account is not active");
+        try {
+            User user = userRepository.findById(userId);
+            if (user == null || user.getStatusId() == null || user.getStatusId() != 1) {
+                revocations.revokeSession(sessionId, sessionExpiry());
+                throw new RuntimeException("User account is not active");
+            }
+            userCache.put(user);
+            Map<String, Object> tokens = issueTokens(user, sessionId);
+            rotation.tokens.complete(tokens);
+            return new HashMap<>(tokens);
+        } catch (SQLException | RuntimeException e) {
+            rotation.tokens.completeExceptionally(e);
+            throw e;
         }
+    }
 
-        User userWithDetails = userRepository.findById(user.getId());
+    /** The pair issued by a rotation still in its grace window, unless the session was revoked since. */
+    private Map<String, Object> awaitRotation(Rotation rotation) throws SQLException {
+        Map<String, Object> tokens;
+        try {
+            tokens = rotation.tokens.get(Math.max(1, rotation.expiresAt - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OverloadedException("Interrupted while refreshing");
+        } catch (TimeoutException e) {
+            throw new OverloadedException("Refresh is still in progress");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+        DecodedJWT issued = jwtUtil.verifyToken((String) tokens.get("refreshToken"));
+        if (revocations.isTokenRevoked(issued.getId()) || revocations.isSessionRevoked(issued.getClaim("sid").asString())) {
+            throw new RuntimeException("Refresh token has been revoked");
+        }
+        return new HashMap<>(tokens);
+    }
 
-        String token = jwtUtil.generateToken(
-                user.getUsername(),
-                user.getId(),
-                userWithDetails.getRoles());
+    /**
+     * Ends the session of whichever token verifies, so its access and refresh tokens stop
+     * working at once. Returns false when neither token is valid.
+     */
+    public boolean logout(String accessToken, String refreshToken) {
+        boolean revoked = false;
+        for (String token : new String[] {accessToken, refreshToken}) {
+            if (token == null) {
+                continue;
+            }
+            try {
+                DecodedJWT jwt = jwtUtil.verifyToken(token);
+                revocations.revokeToken(jwt.getId(), jwt.getExpiresAt().getTime());
+                revocations.revokeSession(jwt.getClaim("sid").asString(), sessionExpiry());
+                revoked = true;
+            } catch (JWTVerificationException e) {
+                // an expired or forged token has nothing left to revoke
+            }
+        }
+        return revoked;
+    }
 
+    private Map<String, Object> issueTokens(User user, String sessionId) {
         Map<String, Object> response = new HashMap<>();
-        response.put("token", token);
-        response.put("user", createUserResponse(userWithDetails));
-
+        response.put("token", jwtUtil.generateToken(user, sessionId));
+        response.put("refreshToken", jwtUtil.generateRefreshToken(user, sessionId));
+        response.put("expiresIn", jwtUtil.getExpiration() / 1000);
         return response;
     }
 
+    /** No token of a session outlives a refresh token issued now. */
+    private long sessionExpiry() {
+        return System.currentTimeMillis() + Math.max(jwtUtil.getExpiration(), jwtUtil.getRefreshExpiration());
+    }
+
+    /**
+     * Authenticates a request token. In {@code claims} mode the token is verified once
+     * and the principal is built from its claims without touching the database; tokens
+     * issued before the claims were added, and {@code database} mode, load the user.
+     */
+    public AuthPrincipal authenticate(String token) throws SQLException {
+        try (Span span = Tracer.span("service.authenticate")) {
+            DecodedJWT jwt = verifyAccess(token);
+            if (claimsMode) {
+                AuthPrincipal principal = jwtUtil.toPrincipal(jwt);
+                if (principal != null) {
+                    if (principal.getStatusId() == null || principal.getStatusId() != 1) {
+                        throw new RuntimeException("User account is not active");
+                    }
+                    return principal;
+                }
+            }
+            return AuthPrincipal.fromUser(loadTokenUser(jwt));
+        }
+    }
+
+    /** Whether an access token accepted earlier would still be accepted now: unexpired and not revoked. */
+    public boolean isTokenValid(String token) {
+        try {
+            verifyAccess(token);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
     public User validateToken(String token) throws SQLException {
-        if (!jwtUtil.isTokenValid(token)) {
+        return loadTokenUser(verifyAccess(token));
+    }
+
+    private DecodedJWT verify(String token) {
+        try {
+            return jwtUtil.verifyToken(token);
+        } catch (JWTVerificationException e) {
+            throw new RuntimeException("Invalid or expired token");
+        }
+    }
+
+    /** Verifies an access token and checks it against the in-memory revocation list. */
+    private DecodedJWT verifyAccess(String token) {
+        DecodedJWT jwt = verify(token);
+        if (JwtUtil.isRefreshToken(jwt)) {
             throw new RuntimeException("Invalid or expired token");
         }
+        if (revocations.isTokenRevoked(jwt.getId())
+                || revocations.isSessionRevoked(jwt.getClaim("sid").asString())
+                || (jwt.getIssuedAt() != null
+                    && revocations.isUserRevoked(jwt.getClaim("userId").asInt(), jwt.getIssuedAt().getTime()))) {
+            throw new RuntimeException("Token has been revoked");
+        }
+        return jwt;
+    }
 
-        Integer userId = jwtUtil.getUserIdFromToken(token);
-        User user = userRepository.findById(userId);
+    private User loadTokenUser(DecodedJWT jwt) throws SQLException {
+        Integer userId = jwt.getClaim("userId").asInt();
+        User user = userCache.get(userId, userLoader);
 
         if (user == null) {
             throw new RuntimeException("User not found");
@@ -0,0 +1,106 @@
+package com.wms.service;
+
+import com.wms.model.CatalogSnapshot;
+import com.wms.repository.Repositories;
+import com.wms.repository.RoleRepository;
+import com.wms.util.NotificationListener;
+
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory copy of roles, permissions and their assignments, loaded at startup.
+ * Triggers on the catalog tables {@code NOTIFY ums_catalog_changed}; each notification
+ * (and a periodic check, in case one is missed) loads a fresh snapshot and swaps it in
+ * atomically, so readers always see one consistent version without locking.
+ */
+public class RoleCatalog {
+    public static final String CHANNEL = "ums_catalog_changed";
+
+    private static volatile RoleCatalog instance;
+
+    private final RoleRepository roleRepository;
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong reloadCount = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private long refreshIntervalMs;
+
+    private RoleCatalog() {
+        this.roleRepository = Repositories.roles();
+        loadProperties();
+        this.snapshot.set(new CatalogSnapshot(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap()));
+        reload();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "role-catalog-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        if (Repositories.isInMemory()) {
+            return;
+        }
+        if (refreshIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::reload, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        NotificationListener.getInstance().subscribe(CHANNEL, new NotificationListener.Handler() {
+            @Override
+            public void onNotification(String channel, String payload) {
+                scheduler.execute(RoleCatalog.this::reload);
+            }
+
+            @Override
+            public void onReconnect() {
+                scheduler.execute(RoleCatalog.this::reload);
+            }
+        });
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.refreshIntervalMs = Long.parseLong(prop.getProperty("catalog.refreshIntervalMs", "300000"));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load role catalog configuration", e);
+        }
+    }
+
+    public static RoleCatalog getInstance() {
+        if (instance == null) {
+            synchronized (RoleCatalog.class) {
+                if (instance == null) {
+                    instance = new RoleCatalog();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public CatalogSnapshot get() {
+        return snapshot.get();
+    }
+
+    /** Loads a new snapshot; on failure the current one stays in place. */
+    public void reload() {
+        try {
+            snapshot.set(roleRepository.loadCatalog());
+            reloadCount.incrementAndGet();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Failed to load role catalog: " + e.getMessage());
+        }
+    }
+
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+}
@@ -0,0 +1,201 @@
+package com.wms.service;
+
+import com.wms.metrics.Metrics;
+import com.wms.util.JwtUtil;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Revoked token ids, sessions and users, checked on every request without I/O.
+ * Revoked ids and sessions go into an exact map with their expiry and into a bloom
+ * filter in front of it, so the common case (not revoked) is a few bit reads. The
+ * filter has two generations, each covering {@code maxTokenLifetimeMs}; the older one
+ * is dropped when the newer one fills its slot, by which time every token it records
+ * has expired. Expired map entries are swept at the same moment.
+ *
+ * <p>Revocations live in this process only: they are lost on restart and not shared
+ * between instances, so they bound, rather than replace, the access token lifetime.
+ */
+public class TokenRevocationList {
+    private static volatile TokenRevocationList instance;
+
+    private static final int HASHES = 4;
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> usersRevokedAt = new ConcurrentHashMap<>();
+    private final long maxTokenLifetimeMs;
+    private int bloomBits;
+    private volatile Generations generations;
+
+    private final LongAdder falsePositives;
+
+    private static final class Generations {
+        final AtomicLongArray current;
+        final AtomicLongArray previous;
+        final long rotateAt;
+
+        Generations(AtomicLongArray current, AtomicLongArray previous, long rotateAt) {
+            this.current = current;
+            this.previous = previous;
+            this.rotateAt = rotateAt;
+        }
+    }
+
+    private TokenRevocationList() {
+        loadProperties();
+        JwtUtil jwtUtil = JwtUtil.getInstance();
+        this.maxTokenLifetimeMs = Math.max(jwtUtil.getExpiration(), jwtUtil.getRefreshExpiration());
+        this.generations = new Generations(new AtomicLongArray(bloomBits / 64), new AtomicLongArray(bloomBits / 64),
+                System.currentTimeMillis() + maxTokenLifetimeMs);
+
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("wms_token_revocations", "Revoked token ids and sessions not yet expired", revoked::size);
+        metrics.gauge("wms_token_revoked_users", "Users whose earlier tokens are revoked", usersRevokedAt::size);
+        this.falsePositives = metrics.counter("wms_token_revocation_false_positives_total",
+                "Bloom filter hits not confirmed by the exact set");
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            int bits = Integer.parseInt(prop.getProperty("auth.revocation.bloomBits", "1048576").trim());
+            this.bloomBits = Math.max(64, bits / 64 * 64);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load token revocation configuration", e);
+        }
+    }
+
+    public static TokenRevocationList getInstance() {
+        if (instance == null) {
+            synchronized (TokenRevocationList.class) {
+                if (instance == null) {
+                    instance = new TokenRevocationList();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Revokes a token id until {@code expiresAtMs}. Returns false if it was already
+     * revoked, which lets refresh token rotation detect a token being used twice.
+     */
+    public boolean revokeToken(String tokenId, long expiresAtMs) {
+        return tokenId != null && add("t:" + tokenId, expiresAtMs);
+    }
+
+    /** Revokes every token of a login session issued until {@code expiresAtMs}. */
+    public void revokeSession(String sessionId, long expiresAtMs) {
+        if (sessionId != null) {
+            add("s:" + sessionId, expiresAtMs);
+        }
+    }
+
+    /** Revokes every token issued to the user up to now, e.g. when the user is deactivated. */
+    public void revokeUser(int userId) {
+        rotateIfDue(System.currentTimeMillis());
+        usersRevokedAt.put(userId, System.currentTimeMillis());
+    }
+
+    public boolean isTokenRevoked(String tokenId) {
+        return tokenId != null && contains("t:" + tokenId);
+    }
+
+    public boolean isSessionRevoked(String sessionId) {
+        return sessionId != null && contains("s:" + sessionId);
+    }
+
+    /** Whether a token issued at {@code issuedAtMs} (second precision) predates the user's revocation. */
+    public boolean isUserRevoked(Integer userId, long issuedAtMs) {
+        if (userId == null || usersRevokedAt.isEmpty()) {
+            return false;
+        }
+        Long revokedAt = usersRevokedAt.get(userId);
+        return revokedAt != null && issuedAtMs <= revokedAt;
+    }
+
+    private boolean add(String key, long expiresAtMs) {
+        long now = System.currentTimeMillis();
+        if (expiresAtMs <= now) {
+            return true;
+        }
+        rotateIfDue(now);
+        if (revoked.putIfAbsent(key, expiresAtMs) != null) {
+            return false;
+        }
+        AtomicLongArray bits = generations.current;
+        long h1 = hash(key);
+        long h2 = mix(h1);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bloomBits);
+            bits.getAndAccumulate(bit >>> 6, 1L << bit, (a, b) -> a | b);
+        }
+        return true;
+    }
+
+    private boolean contains(String key) {
+        Generations g = generations;
+        long h1 = hash(key);
+        long h2 = mix(h1);
+        if (!mightContain(g.current, h1, h2) && !mightContain(g.previous, h1, h2)) {
+            return false;
+        }
+        Long expiresAt = revoked.get(key);
+        if (expiresAt == null) {
+            falsePositives.increment();
+            return false;
+        }
+        return expiresAt > System.currentTimeMillis();
+    }
+
+    private boolean mightContain(AtomicLongArray bits, long h1, long h2) {
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bloomBits);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rotateIfDue(long now) {
+        if (now < generations.rotateAt) {
+            return;
+        }
+        synchronized (this) {
+            Generations g = generations;
+            if (now < g.rotateAt) {
+                return;
+            }
+            generations = new Generations(new AtomicLongArray(bloomBits / 64), g.current, now + maxTokenLifetimeMs);
+            revoked.values().removeIf(expiresAt -> expiresAt <= now);
+            usersRevokedAt.values().removeIf(revokedAt -> revokedAt + maxTokenLifetimeMs <= now);
+        }
+    }
+
+    /** 64-bit FNV-1a over the key's chars. */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h | 1;
+    }
+}
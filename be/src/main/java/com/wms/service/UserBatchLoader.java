@@ -0,0 +1,191 @@
+package com.wms.service;
+
+import com.wms.metrics.Metrics;
+import com.wms.model.User;
+import com.wms.repository.Repositories;
+import com.wms.repository.UserRepository;
+
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coalesces concurrent single-user lookups into one {@code findByIds} query. The first
+ * lookup opens a batch and waits {@code loader.user.windowMicros} (or until the batch
+ * holds {@code loader.user.maxBatchSize} ids) for others to join, then runs the query
+ * on its own thread and hands every waiter its row. Lookups for an id already in the
+ * open batch share its result. A batch stops accepting ids once its query starts, so a
+ * lookup never receives a row read before it began. A lookup with no other lookup in
+ * progress skips the wait, so batching adds no latency to an idle server. A window of 0
+ * turns batching off.
+ */
+public class UserBatchLoader implements UserCache.Loader {
+    private static volatile UserBatchLoader instance;
+
+    private final UserRepository userRepository;
+    private final Object lock = new Object();
+    private Batch collecting;
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private long windowNanos;
+    private int maxBatchSize;
+
+    private final LongAdder batches;
+    private final LongAdder keys;
+    private final LongAdder deduplicated;
+
+    private static final class Batch {
+        final Map<Integer, CompletableFuture<User>> futures = new LinkedHashMap<>();
+        final Thread leader = Thread.currentThread();
+        volatile boolean closed;
+    }
+
+    private UserBatchLoader() {
+        loadProperties();
+        this.userRepository = Repositories.users();
+        Metrics metrics = Metrics.getInstance();
+        this.batches = metrics.counter("wms_user_loader_batches_total", "findById batches sent to the repository");
+        this.keys = metrics.counter("wms_user_loader_keys_total", "Distinct user ids looked up in batches");
+        this.deduplicated = metrics.counter("wms_user_loader_deduplicated_total",
+                "Lookups that joined an identical pending lookup");
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.windowNanos = TimeUnit.MICROSECONDS.toNanos(
+                    Long.parseLong(prop.getProperty("loader.user.windowMicros", "250").trim()));
+            this.maxBatchSize = Integer.parseInt(prop.getProperty("loader.user.maxBatchSize", "100").trim());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load user loader configuration", e);
+        }
+    }
+
+    public static UserBatchLoader getInstance() {
+        if (instance == null) {
+            synchronized (UserBatchLoader.class) {
+                if (instance == null) {
+                    instance = new UserBatchLoader();
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public User load(int id) throws SQLException {
+        if (windowNanos <= 0) {
+            return userRepository.findById(id);
+        }
+
+        inProgress.incrementAndGet();
+        try {
+            return loadBatched(id);
+        } finally {
+            inProgress.decrementAndGet();
+        }
+    }
+
+    private User loadBatched(int id) throws SQLException {
+        Batch batch;
+        CompletableFuture<User> future;
+        boolean leader = false;
+        boolean filled = false;
+        synchronized (lock) {
+            if (collecting == null) {
+                collecting = new Batch();
+                leader = true;
+            }
+            batch = collecting;
+            future = batch.futures.get(id);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                batch.futures.put(id, future);
+            } else {
+                deduplicated.increment();
+            }
+            if (batch.futures.size() >= maxBatchSize) {
+                collecting = null;
+                batch.closed = true;
+                filled = true;
+            }
+        }
+
+        if (leader) {
+            long deadline = System.nanoTime() + windowNanos;
+            long remaining;
+            while (!batch.closed && inProgress.get() > 1 && !Thread.currentThread().isInterrupted()
+                    && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            synchronized (lock) {
+                if (collecting == batch) {
+                    collecting = null;
+                }
+                batch.closed = true;
+            }
+            flush(batch);
+        } else if (filled) {
+            LockSupport.unpark(batch.leader);
+        }
+        return await(future);
+    }
+
+    /** Runs once the batch is closed, so its id set no longer changes. */
+    private void flush(Batch batch) {
+        batches.increment();
+        keys.add(batch.futures.size());
+        try {
+            Map<Integer, User> found = new HashMap<>();
+            if (batch.futures.size() == 1) {
+                Integer id = batch.futures.keySet().iterator().next();
+                User user = userRepository.findById(id);
+                if (user != null) {
+                    found.put(id, user);
+                }
+            } else {
+                for (User user : userRepository.findByIds(new ArrayList<>(batch.futures.keySet()))) {
+                    found.put(user.getId(), user);
+                }
+            }
+            for (Map.Entry<Integer, CompletableFuture<User>> entry : batch.futures.entrySet()) {
+                entry.getValue().complete(found.get(entry.getKey()));
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (CompletableFuture<User> future : batch.futures.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static User await(CompletableFuture<User> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading user", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
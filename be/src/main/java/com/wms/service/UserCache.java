@@ -0,0 +1,163 @@
+package com.wms.service;
+
+import com.wms.metrics.Metrics;
+import com.wms.model.User;
+
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of user rows keyed by user id, shared by
+ * {@link UserService} and {@link AuthService}. Entries expire after a TTL;
+ * writes go through {@link #put(User)} / {@link #invalidate(int)}.
+ */
+public class UserCache {
+    private static volatile UserCache instance;
+
+    private final Map<Integer, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong writeEpoch = new AtomicLong();
+    private int maxSize;
+    private long ttlMs;
+
+    public interface Loader {
+        User load(int id) throws SQLException;
+    }
+
+    private static final class Entry {
+        final User user;
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private UserCache() {
+        loadProperties();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("wms_user_cache_size", "Cached users", this::size);
+        metrics.counter("wms_user_cache_requests_total", "User cache lookups", this::getHitCount, "result", "hit");
+        metrics.counter("wms_user_cache_requests_total", "User cache lookups", this::getMissCount, "result", "miss");
+        metrics.counter("wms_user_cache_evictions_total", "Users evicted by the size bound", this::getEvictionCount);
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.maxSize = Integer.parseInt(prop.getProperty("cache.user.maxSize", "10000"));
+            this.ttlMs = Long.parseLong(prop.getProperty("cache.user.ttlMs", "60000"));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load user cache configuration", e);
+        }
+    }
+
+    public static UserCache getInstance() {
+        if (instance == null) {
+            synchronized (UserCache.class) {
+                if (instance == null) {
+                    instance = new UserCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached user or loads it. A loaded value is only cached if no
+     * write happened while it was being loaded, so a slow read can never put
+     * back a row that an update or delete has just replaced.
+     */
+    public User get(int id, Loader loader) throws SQLException {
+        if (maxSize <= 0) {
+            return loader.load(id);
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    hits.incrementAndGet();
+                    return entry.user;
+                }
+                entries.remove(id);
+            }
+        }
+        misses.incrementAndGet();
+
+        long epoch = writeEpoch.get();
+        User user = loader.load(id);
+        if (user != null) {
+            synchronized (entries) {
+                if (writeEpoch.get() == epoch) {
+                    entries.put(id, new Entry(user, System.currentTimeMillis() + ttlMs));
+                }
+            }
+        }
+        return user;
+    }
+
+    public void put(User user) {
+        if (user == null || user.getId() == null || maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            writeEpoch.incrementAndGet();
+            entries.put(user.getId(), new Entry(user, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    public void invalidate(int id) {
+        synchronized (entries) {
+            writeEpoch.incrementAndGet();
+            entries.remove(id);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            writeEpoch.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+}
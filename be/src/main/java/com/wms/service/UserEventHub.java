@@ -0,0 +1,283 @@
+package com.wms.service;
+
+import com.google.gson.Gson;
+import com.wms.metrics.Metrics;
+import com.wms.model.User;
+import com.wms.repository.Repositories;
+import com.wms.repository.UserRepository;
+import com.wms.util.NotificationListener;
+
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans user changes out to event stream subscribers. On Postgres, a trigger on
+ * {@code ums.user_read_model} sends {@code NOTIFY ums_user_changed} with
+ * {@code <op>:<id>}, received on the shared {@link NotificationListener} connection,
+ * so writes from every instance and from outside the API are seen; the in-memory
+ * engine publishes from {@link UserService} instead.
+ * Notifications are merged per user and the changed users are loaded with one query
+ * per batch, however many subscribers there are. Each event is formatted once as a
+ * server-sent event frame and offered to every subscriber's bounded buffer; a
+ * subscriber whose buffer is full is dropped and its connection cut. Each stream holds
+ * a request thread, so with a bounded executor at most a quarter of its threads may
+ * serve streams (see {@link #limitToThreads(int)}). A batch larger than half a buffer, or a
+ * listener reconnect (notifications may have been missed), is sent as a single
+ * {@code resync} event telling clients to catch up from {@code /api/users/changes}.
+ */
+public class UserEventHub {
+    public static final String CHANNEL = "ums_user_changed";
+
+    private static volatile UserEventHub instance;
+
+    private final UserRepository userRepository;
+    private final Gson gson = new Gson();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService publisher;
+    private final boolean listening;
+    private final Map<Integer, String> pending = new LinkedHashMap<>();
+    private boolean drainScheduled;
+    private int maxSubscribers;
+    private volatile int threadLimit = Integer.MAX_VALUE;
+    private int bufferSize;
+    private long heartbeatMs;
+
+    private final LongAdder published;
+    private final LongAdder dropped;
+
+    /** One event stream connection: a bounded buffer of ready-to-write frames. */
+    public static final class Subscriber {
+        private final BlockingQueue<String> frames;
+        private final Runnable onDrop;
+        private volatile boolean dropped;
+
+        Subscriber(int bufferSize, Runnable onDrop) {
+            this.frames = new ArrayBlockingQueue<>(bufferSize);
+            this.onDrop = onDrop;
+        }
+
+        /** Next frame, or null after {@code timeoutMs} without one. */
+        public String poll(long timeoutMs) throws InterruptedException {
+            return frames.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        /** Next frame if one is already buffered. */
+        public String poll() {
+            return frames.poll();
+        }
+
+        /** True once the subscriber fell a full buffer behind; the stream should end. */
+        public boolean isDropped() {
+            return dropped;
+        }
+    }
+
+    private UserEventHub() {
+        loadProperties();
+        this.userRepository = Repositories.users();
+        this.publisher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "user-event-publisher");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("wms_user_event_subscribers", "Open user event streams", subscriberCount::get);
+        this.published = metrics.counter("wms_user_events_total", "User events published to subscribers");
+        this.dropped = metrics.counter("wms_user_event_dropped_subscribers_total",
+                "Event streams closed because the client fell a full buffer behind");
+
+        this.listening = !Repositories.isInMemory();
+        if (listening) {
+            NotificationListener.getInstance().subscribe(CHANNEL, new NotificationListener.Handler() {
+                @Override
+                public void onNotification(String channel, String payload) {
+                    int sep = payload.indexOf(':');
+                    if (sep > 0) {
+                        enqueue(Integer.parseInt(payload.substring(sep + 1)), payload.substring(0, sep));
+                    }
+                }
+
+                @Override
+                public void onReconnect() {
+                    publisher.execute(() -> broadcast(frame("resync", "{}")));
+                }
+            });
+        }
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.maxSubscribers = Integer.parseInt(prop.getProperty("events.user.maxSubscribers", "100").trim());
+            this.bufferSize = Integer.parseInt(prop.getProperty("events.user.bufferSize", "256").trim());
+            this.heartbeatMs = Long.parseLong(prop.getProperty("events.user.heartbeatMs", "15000").trim());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load user event configuration", e);
+        }
+    }
+
+    public static UserEventHub getInstance() {
+        if (instance == null) {
+            synchronized (UserEventHub.class) {
+                if (instance == null) {
+                    instance = new UserEventHub();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Caps streams at a quarter of a bounded executor's threads, so open streams cannot
+     * starve ordinary requests; a non-positive count (unbounded executor) lifts the cap.
+     */
+    public void limitToThreads(int maxThreads) {
+        this.threadLimit = maxThreads > 0 ? maxThreads / 4 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Registers a stream, or returns null when {@code events.user.maxSubscribers} (or the
+     * thread limit) are already open. {@code onDrop} runs on the publisher thread if the
+     * stream falls a full buffer behind and must cut the connection, since the stream's
+     * own thread may be blocked writing to the slow client.
+     */
+    public Subscriber subscribe(Runnable onDrop) {
+        if (subscriberCount.incrementAndGet() > Math.min(maxSubscribers, threadLimit)) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(bufferSize, onDrop);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        if (subscriber != null && subscribers.remove(subscriber)) {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    public long getHeartbeatMs() {
+        return heartbeatMs;
+    }
+
+    /** Publishes a write made through this server; a no-op when Postgres notifications cover it. */
+    public void userCreated(int id) {
+        if (!listening) {
+            enqueue(id, "insert");
+        }
+    }
+
+    public void userUpdated(int id) {
+        if (!listening) {
+            enqueue(id, "update");
+        }
+    }
+
+    public void userDeleted(int id) {
+        if (!listening) {
+            enqueue(id, "delete");
+        }
+    }
+
+    /**
+     * Merges with a pending change to the same user: a later delete wins, an insert stays
+     * an insert, and an insert or update after a pending delete becomes an update, since
+     * the row exists again (a read model rebuild deletes and reinserts every user).
+     */
+    private void enqueue(int id, String op) {
+        synchronized (pending) {
+            String previous = pending.get(id);
+            if ("delete".equals(previous) && !"delete".equals(op)) {
+                pending.put(id, "update");
+            } else if (previous == null || "delete".equals(op) || ("update".equals(previous) && "insert".equals(op))) {
+                pending.put(id, op);
+            }
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+        }
+        publisher.execute(this::drain);
+    }
+
+    private void drain() {
+        Map<Integer, String> batch;
+        synchronized (pending) {
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+            drainScheduled = false;
+        }
+        if (batch.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+        if (batch.size() > bufferSize / 2) {
+            broadcast(frame("resync", "{}"));
+            return;
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : batch.entrySet()) {
+            if (!"delete".equals(entry.getValue())) {
+                ids.add(entry.getKey());
+            }
+        }
+        Map<Integer, User> users = new LinkedHashMap<>();
+        try {
+            for (User user : ids.isEmpty() ? List.<User>of() : userRepository.findByIds(ids)) {
+                users.put(user.getId(), user);
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Failed to load changed users: " + e.getMessage());
+            broadcast(frame("resync", "{}"));
+            return;
+        }
+
+        for (Map.Entry<Integer, String> entry : batch.entrySet()) {
+            int id = entry.getKey();
+            if ("delete".equals(entry.getValue())) {
+                broadcast(frame("user.deleted", gson.toJson(Map.of("id", id))));
+            } else if (users.containsKey(id)) {
+                String event = "insert".equals(entry.getValue()) ? "user.created" : "user.updated";
+                broadcast(frame(event, gson.toJson(users.get(id))));
+            }
+            // a user missing here was deleted since; its delete notification follows
+        }
+    }
+
+    private void broadcast(String frame) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.frames.offer(frame)) {
+                subscriber.dropped = true;
+                unsubscribe(subscriber);
+                dropped.increment();
+                subscriber.onDrop.run();
+            }
+        }
+        published.increment();
+    }
+
+    private static String frame(String event, String data) {
+        return "event: " + event + "\ndata: " + data + "\n\n";
+    }
+}
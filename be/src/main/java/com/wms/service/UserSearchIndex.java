@@ -0,0 +1,432 @@
+package com.wms.service;
+
+import com.wms.metrics.LatencyHistogram;
+import com.wms.metrics.Metrics;
+import com.wms.model.User;
+import com.wms.model.UserQuery;
+import com.wms.repository.Repositories;
+import com.wms.repository.UserRepository;
+
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory typeahead index over username, email and full name. Each user is indexed
+ * by the lowercased trigrams of those fields and by their words (for queries shorter
+ * than a trigram). A query intersects the posting lists of its trigrams, smallest first,
+ * to find substring matches; when that leaves room, users sharing at least half of the
+ * query's trigrams are added as near matches. Matches are ranked exact, prefix, word
+ * prefix, substring, near, with username ahead of full name ahead of email.
+ *
+ * <p>Loaded at startup and kept current by {@link UserService} writes; a periodic
+ * rebuild ({@code search.user.rebuildIntervalMs}) picks up changes made elsewhere.
+ * Writes that land while a rebuild is reading are replayed onto the new index before
+ * it is swapped in. Until the first load succeeds {@link #isReady()} is false.
+ */
+public class UserSearchIndex {
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 50;
+
+    /** Cap on prefix candidates scored for one- and two-character queries. */
+    private static final int MAX_PREFIX_CANDIDATES = 2000;
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private static volatile UserSearchIndex instance;
+
+    private final UserRepository userRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService scheduler;
+    private Index index = new Index();
+    private Map<Integer, User> pendingWrites;
+    private volatile boolean ready;
+    private boolean enabled;
+    private long rebuildIntervalMs;
+
+    private final LatencyHistogram queryLatency;
+
+    private static final Comparator<Match> RANKING = Comparator
+            .comparingInt((Match m) -> m.score).reversed()
+            .thenComparingInt(m -> m.doc.username.length())
+            .thenComparing(m -> m.doc.username)
+            .thenComparingInt(m -> m.doc.user.getId());
+
+    /** A user as indexed: the user to return plus its lowercased fields, words and trigrams. */
+    private static final class Doc {
+        final User user;
+        final String username;
+        final String email;
+        final String fullName;
+        final Set<String> words = new HashSet<>();
+        final Set<Long> grams = new HashSet<>();
+
+        Doc(User user) {
+            this.user = user;
+            this.username = lower(user.getUsername());
+            this.email = lower(user.getEmail());
+            this.fullName = lower(user.getFullName());
+            for (String field : new String[] {username, email, fullName}) {
+                addWords(field, words);
+                addTrigrams(field, grams);
+            }
+        }
+    }
+
+    private static final class Match {
+        final Doc doc;
+        final int score;
+
+        Match(Doc doc, int score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+
+    /** Documents and their postings; guarded by the enclosing index's lock once published. */
+    private static final class Index {
+        final Map<Integer, Doc> docs = new HashMap<>();
+        final Map<Long, Set<Integer>> trigrams = new HashMap<>();
+        final TreeMap<String, Set<Integer>> words = new TreeMap<>();
+
+        void put(User user) {
+            remove(user.getId());
+            Doc doc = new Doc(user);
+            int id = user.getId();
+            docs.put(id, doc);
+            for (Long gram : doc.grams) {
+                trigrams.computeIfAbsent(gram, k -> new HashSet<>()).add(id);
+            }
+            for (String word : doc.words) {
+                words.computeIfAbsent(word, k -> new HashSet<>()).add(id);
+            }
+        }
+
+        void remove(int id) {
+            Doc doc = docs.remove(id);
+            if (doc == null) {
+                return;
+            }
+            for (Long gram : doc.grams) {
+                Set<Integer> ids = trigrams.get(gram);
+                if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                    trigrams.remove(gram);
+                }
+            }
+            for (String word : doc.words) {
+                Set<Integer> ids = words.get(word);
+                if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                    words.remove(word);
+                }
+            }
+        }
+    }
+
+    private UserSearchIndex() {
+        loadProperties();
+        this.userRepository = Repositories.users();
+        Metrics metrics = Metrics.getInstance();
+        this.queryLatency = metrics.histogram("wms_user_search_seconds", "Typeahead lookups served by the index");
+        metrics.gauge("wms_user_search_index_users", "Users in the typeahead index", this::size);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-search-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!enabled) {
+            return;
+        }
+        rebuild();
+        if (rebuildIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::rebuild, rebuildIntervalMs, rebuildIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.enabled = Boolean.parseBoolean(prop.getProperty("search.user.index", "true").trim());
+            this.rebuildIntervalMs = Long.parseLong(prop.getProperty("search.user.rebuildIntervalMs", "300000").trim());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load user search configuration", e);
+        }
+    }
+
+    public static UserSearchIndex getInstance() {
+        if (instance == null) {
+            synchronized (UserSearchIndex.class) {
+                if (instance == null) {
+                    instance = new UserSearchIndex();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Whether the index is enabled and loaded; otherwise searches go to the repository. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Reloads every user into a new index and swaps it in; on failure the current one stays. */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingWrites = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index next = new Index();
+        boolean loaded = false;
+        try {
+            UserQuery all = new UserQuery();
+            all.setSort(UserQuery.Sort.USERNAME_ASC);
+            userRepository.streamAll(all, next::put);
+            loaded = true;
+        } catch (Exception e) {
+            System.err.println("Failed to build user search index: " + e.getMessage());
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                for (Map.Entry<Integer, User> write : pendingWrites.entrySet()) {
+                    if (write.getValue() == null) {
+                        next.remove(write.getKey());
+                    } else {
+                        next.put(write.getValue());
+                    }
+                }
+                index = next;
+                ready = true;
+            }
+            pendingWrites = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Adds or replaces a user after a write. */
+    public void put(User user) {
+        if (!enabled || user == null || user.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index.put(user);
+            if (pendingWrites != null) {
+                pendingWrites.put(user.getId(), user);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Collection<User> users) {
+        for (User user : users) {
+            put(user);
+        }
+    }
+
+    public void remove(int id) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index.remove(id);
+            if (pendingWrites != null) {
+                pendingWrites.put(id, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Up to {@code limit} users matching {@code term}, best first. */
+    public List<User> search(String term, int limit) {
+        long startedAt = System.nanoTime();
+        String needle = lower(term).trim();
+        if (needle.length() > MAX_TERM_LENGTH) {
+            needle = needle.substring(0, MAX_TERM_LENGTH);
+        }
+
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        lock.readLock().lock();
+        try {
+            if (needle.length() < 3) {
+                collectPrefixMatches(needle, best, limit);
+            } else {
+                Set<Long> grams = new HashSet<>();
+                addTrigrams(needle, grams);
+                Set<Integer> seen = collectSubstringMatches(needle, grams, best, limit);
+                if (best.size() < limit && needle.length() > 3) {
+                    collectNearMatches(grams, seen, best, limit);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(RANKING);
+        List<User> users = new ArrayList<>(ranked.size());
+        for (Match match : ranked) {
+            users.add(match.doc.user);
+        }
+        queryLatency.recordSince(startedAt);
+        return users;
+    }
+
+    private void collectPrefixMatches(String needle, PriorityQueue<Match> best, int limit) {
+        Set<Integer> seen = new HashSet<>();
+        for (Set<Integer> ids : index.words.subMap(needle, true, needle + Character.MAX_VALUE, false).values()) {
+            for (Integer id : ids) {
+                if (seen.add(id)) {
+                    offer(best, new Match(index.docs.get(id), score(index.docs.get(id), needle)), limit);
+                }
+            }
+            if (seen.size() >= MAX_PREFIX_CANDIDATES) {
+                return;
+            }
+        }
+    }
+
+    private Set<Integer> collectSubstringMatches(String needle, Set<Long> grams, PriorityQueue<Match> best, int limit) {
+        List<Set<Integer>> postings = new ArrayList<>(grams.size());
+        for (Long gram : grams) {
+            Set<Integer> ids = index.trigrams.get(gram);
+            if (ids == null) {
+                return new HashSet<>();
+            }
+            postings.add(ids);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        Set<Integer> seen = new HashSet<>();
+        candidates:
+        for (Integer id : postings.get(0)) {
+            for (int i = 1; i < postings.size(); i++) {
+                if (!postings.get(i).contains(id)) {
+                    continue candidates;
+                }
+            }
+            Doc doc = index.docs.get(id);
+            int score = score(doc, needle);
+            if (score > 0) {
+                seen.add(id);
+                offer(best, new Match(doc, score), limit);
+            }
+        }
+        return seen;
+    }
+
+    /** Users sharing at least half of the query's trigrams, scored below every substring match. */
+    private void collectNearMatches(Set<Long> grams, Set<Integer> seen, PriorityQueue<Match> best, int limit) {
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (Long gram : grams) {
+            Set<Integer> ids = index.trigrams.get(gram);
+            if (ids != null) {
+                for (Integer id : ids) {
+                    if (!seen.contains(id)) {
+                        shared.merge(id, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+            int hits = entry.getValue();
+            if (hits * 2 >= grams.size()) {
+                offer(best, new Match(index.docs.get(entry.getKey()), hits * 30 / grams.size()), limit);
+            }
+        }
+    }
+
+    private static void offer(PriorityQueue<Match> best, Match match, int limit) {
+        best.add(match);
+        if (best.size() > limit) {
+            best.poll();
+        }
+    }
+
+    /**
+     * 100 exact, 80 prefix, 60 word prefix, 40 substring (0 if none), plus 3 for
+     * username, 2 for full name or 1 for email, taking the best field.
+     */
+    private static int score(Doc doc, String needle) {
+        return Math.max(score(doc.username, needle, 3),
+                Math.max(score(doc.fullName, needle, 2), score(doc.email, needle, 1)));
+    }
+
+    private static int score(String field, String needle, int weight) {
+        int at = field.indexOf(needle);
+        if (at < 0) {
+            return 0;
+        }
+        if (at == 0) {
+            return (field.length() == needle.length() ? 100 : 80) + weight;
+        }
+        do {
+            if (!Character.isLetterOrDigit(field.charAt(at - 1))) {
+                return 60 + weight;
+            }
+            at = field.indexOf(needle, at + 1);
+        } while (at > 0);
+        return 40 + weight;
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    private static void addWords(String field, Set<String> words) {
+        if (field.isEmpty()) {
+            return;
+        }
+        words.add(field);
+        int start = -1;
+        for (int i = 0; i <= field.length(); i++) {
+            boolean letter = i < field.length() && Character.isLetterOrDigit(field.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(field.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    private static void addTrigrams(String value, Set<Long> grams) {
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+    }
+}
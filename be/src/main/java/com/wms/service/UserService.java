@@ -1,59 +1,248 @@
 package com.wms.service;
 
+import com.wms.model.BulkUserRow;
+import com.wms.model.CatalogSnapshot;
 import com.wms.model.User;
+import com.wms.model.UserChanges;
+import com.wms.model.UserPage;
+import com.wms.model.UserQuery;
+import com.wms.repository.Repositories;
 import com.wms.repository.UserRepository;
-import com.wms.util.PasswordUtil;
+import com.wms.repository.UserRowHandler;
+import com.wms.tracing.Span;
+import com.wms.tracing.Tracer;
+import com.wms.util.PasswordHashingPool;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class UserService {
     private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final PasswordHashingPool hashingPool;
+    private final RoleCatalog roleCatalog;
+    private final UserBatchLoader userLoader;
+    private final UserSearchIndex searchIndex;
+    private final TokenRevocationList revocations;
+    private final UserEventHub events;
 
     public UserService() {
-        this.userRepository = new UserRepository();
+        this.userRepository = Repositories.users();
+        this.userCache = UserCache.getInstance();
+        this.hashingPool = PasswordHashingPool.getInstance();
+        this.roleCatalog = RoleCatalog.getInstance();
+        this.userLoader = UserBatchLoader.getInstance();
+        this.searchIndex = UserSearchIndex.getInstance();
+        this.revocations = TokenRevocationList.getInstance();
+        this.events = UserEventHub.getInstance();
     }
 
     public List<User> getAllUsers() throws SQLException {
         return userRepository.findAll();
     }
 
+    public UserPage getUsers(UserQuery query) throws SQLException {
+        return userRepository.findPage(query);
+    }
+
+    public void streamUsers(UserQuery query, UserRowHandler handler) throws SQLException, IOException {
+        userRepository.streamAll(query, handler);
+    }
+
+    public long exportUsers(UserQuery query, boolean ndjson, OutputStream out) throws SQLException, IOException {
+        return userRepository.exportCopy(query, ndjson, out);
+    }
+
     public User getUserById(int id) throws SQLException {
-        User user = userRepository.findById(id);
-        if (user == null) {
-            throw new RuntimeException("User not found");
+        try (Span span = Tracer.span("service.getUserById")) {
+            User user = userCache.get(id, userLoader);
+            if (user == null) {
+                throw new RuntimeException("User not found");
+            }
+            return user;
+        }
+    }
+
+    /**
+     * Users for the given ids in request order; unknown ids are left out. Read with one
+     * query past the cache, so the rows (and a tag built from their versions) are current.
+     */
+    public List<User> getUsersByIds(List<Integer> ids) throws SQLException {
+        Map<Integer, User> found = new HashMap<>();
+        for (User user : userRepository.findByIds(ids)) {
+            found.put(user.getId(), user);
+        }
+        List<User> users = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            User user = found.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Typeahead search, ranked best first. Served from the in-memory index, or from the
+     * repository while the index is disabled or has not loaded yet.
+     */
+    public List<User> searchUsers(String term, int limit) throws SQLException {
+        if (searchIndex.isReady()) {
+            return searchIndex.search(term, limit);
+        }
+        return userRepository.search(term, limit);
+    }
+
+    /**
+     * The user's current row version, or null if the user does not exist. Read from the
+     * repository, not the cache, so it is never older than the last write.
+     */
+    public Long getUserVersion(int id) throws SQLException {
+        return userRepository.findRowVersion(id);
+    }
+
+    /** Like {@link #getUserById(int)}, but reloads a cached copy older than {@code version}. */
+    public User getUserById(int id, long version) throws SQLException {
+        User user = getUserById(id);
+        if (user.getRowVersion() < version) {
+            userCache.invalidate(id);
+            user = getUserById(id);
         }
         return user;
     }
 
+    public long getCollectionVersion() throws SQLException {
+        return userRepository.getCollectionVersion();
+    }
+
+    /** Changes after {@code since} (a cursor from an earlier batch, or null for everything). */
+    public UserChanges getUserChanges(String since, int limit) throws SQLException {
+        long[] cursor = UserChanges.decodeCursor(since);
+        return userRepository.findChanges(cursor[0], (int) cursor[1], limit);
+    }
+
     public User createUser(User user, String password, List<String> roleNames) throws SQLException {
-        String passwordHash = PasswordUtil.hashPassword(password);
-        
-        List<Integer> roleIds = new ArrayList<>();
-        if (roleNames != null && !roleNames.isEmpty()) {
-            roleIds = userRepository.getRoleIdsByName(roleNames);
+        try (Span span = Tracer.span("service.createUser")) {
+            String passwordHash = hashingPool.hashPassword(password);
+
+            List<Integer> roleIds = roleCatalog.get().getRoleIds(roleNames);
+
+            User createdUser = userRepository.create(user, passwordHash, roleIds);
+            userCache.put(createdUser);
+            searchIndex.put(createdUser);
+            events.userCreated(createdUser.getId());
+            return createdUser;
+        }
+    }
+
+    /**
+     * Creates many users at once. Rows that fail validation, repeat a username or email
+     * from an earlier row, or name an unknown role are marked failed and skipped; the
+     * rest are hashed in parallel and inserted in a single transaction.
+     */
+    public List<BulkUserRow> bulkImport(List<BulkUserRow> rows) throws SQLException {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (BulkUserRow row : rows) {
+            if (row.isFailed()) {
+                continue;
+            }
+            User user = row.getUser();
+            if (!usernames.add(user.getUsername())) {
+                row.setError("Duplicate username in import: " + user.getUsername());
+            } else if (!emails.add(user.getEmail())) {
+                row.setError("Duplicate email in import: " + user.getEmail());
+            }
+        }
+
+        CatalogSnapshot catalog = roleCatalog.get();
+        List<BulkUserRow> accepted = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        for (BulkUserRow row : rows) {
+            if (row.isFailed()) {
+                continue;
+            }
+            List<Integer> ids = new ArrayList<>();
+            if (row.getRoleNames() != null) {
+                for (String roleName : row.getRoleNames()) {
+                    Integer roleId = catalog.getRoleId(roleName);
+                    if (roleId == null) {
+                        row.setError("Unknown role: " + roleName);
+                        break;
+                    }
+                    ids.add(roleId);
+                }
+            }
+            if (!row.isFailed()) {
+                row.setRoleIds(ids);
+                accepted.add(row);
+                passwords.add(row.getPassword());
+            }
+        }
+
+        List<String> hashes = hashingPool.hashPasswords(passwords);
+        for (int i = 0; i < accepted.size(); i++) {
+            accepted.get(i).setPasswordHash(hashes.get(i));
+            accepted.get(i).setPassword(null);
+        }
+
+        userRepository.bulkCreate(accepted);
+        List<Integer> createdIds = new ArrayList<>();
+        for (BulkUserRow row : accepted) {
+            if (row.getCreatedId() != null) {
+                createdIds.add(row.getCreatedId());
+            }
+        }
+        if (searchIndex.isReady()) {
+            searchIndex.putAll(userRepository.findByIds(createdIds));
+        }
+        for (Integer createdId : createdIds) {
+            events.userCreated(createdId);
         }
-        
-        return userRepository.create(user, passwordHash, roleIds);
+        return rows;
     }
 
+    /**
+     * One round trip: the repository tells a missing user apart from a successful update.
+     * Deactivating a user revokes the tokens already issued to them.
+     */
     public User updateUser(int id, User user) throws SQLException {
-        User existingUser = userRepository.findById(id);
-        if (existingUser == null) {
-            throw new RuntimeException("User not found");
+        try (Span span = Tracer.span("service.updateUser")) {
+            User updatedUser = userRepository.update(id, user);
+            if (updatedUser == null) {
+                userCache.invalidate(id);
+                searchIndex.remove(id);
+                throw new RuntimeException("User not found");
+            }
+            userCache.put(updatedUser);
+            searchIndex.put(updatedUser);
+            events.userUpdated(id);
+            if (updatedUser.getStatusId() == null || updatedUser.getStatusId() != 1) {
+                revocations.revokeUser(id);
+            }
+            return updatedUser;
         }
-        
-        return userRepository.update(id, user);
     }
 
     public boolean deleteUser(int id) throws SQLException {
-        User existingUser = userRepository.findById(id);
-        if (existingUser == null) {
-            throw new RuntimeException("User not found");
+        try (Span span = Tracer.span("service.deleteUser")) {
+            boolean deleted = userRepository.delete(id);
+            userCache.invalidate(id);
+            searchIndex.remove(id);
+            if (!deleted) {
+                throw new RuntimeException("User not found");
+            }
+            revocations.revokeUser(id);
+            events.userDeleted(id);
+            return true;
         }
-        
-        return userRepository.delete(id);
     }
 }
 
@@ -0,0 +1,31 @@
+package com.wms.tracing;
+
+/**
+ * A timed section of a request, closed with try-with-resources. Outside a sampled
+ * trace {@link Tracer#span(String)} hands out a shared no-op span, so instrumented
+ * code costs one thread-local read.
+ */
+public final class Span implements AutoCloseable {
+    static final Span NOOP = new Span(null, null, 0, 0);
+
+    private final Trace trace;
+    final String name;
+    final long startNanos;
+    final int depth;
+    long endNanos;
+
+    Span(Trace trace, String name, long startNanos, int depth) {
+        this.trace = trace;
+        this.name = name;
+        this.startNanos = startNanos;
+        this.depth = depth;
+    }
+
+    @Override
+    public void close() {
+        if (trace != null && endNanos == 0) {
+            endNanos = System.nanoTime();
+            trace.end(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.wms.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Spans of one request, owned by the thread handling it. Only sampled traces record
+ * spans; every trace has an id and a start time for the slow-request log.
+ */
+public final class Trace {
+    private static final int MAX_SPANS = 256;
+
+    private final String traceId;
+    private final boolean sampled;
+    private final long startNanos;
+    private final List<Span> spans;
+    private int depth;
+    private int droppedSpans;
+    private volatile boolean longLived;
+
+    Trace(String traceId, boolean sampled) {
+        this.traceId = traceId;
+        this.sampled = sampled;
+        this.startNanos = System.nanoTime();
+        this.spans = sampled ? new ArrayList<>(16) : null;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /** Marks a request that is meant to stay open, such as an event stream, so it is never logged as slow. */
+    public void markLongLived() {
+        this.longLived = true;
+    }
+
+    public boolean isLongLived() {
+        return longLived;
+    }
+
+    Span start(String name) {
+        if (spans.size() >= MAX_SPANS) {
+            droppedSpans++;
+            return Span.NOOP;
+        }
+        Span span = new Span(this, name, System.nanoTime(), depth++);
+        spans.add(span);
+        return span;
+    }
+
+    void end(Span span) {
+        depth = span.depth;
+    }
+
+    /** One line per span: offset from the request start, duration, indented by nesting. */
+    String formatSpans() {
+        StringBuilder out = new StringBuilder();
+        if (spans == null) {
+            return out.toString();
+        }
+        for (Span span : spans) {
+            out.append('\n').append("  ".repeat(span.depth + 1));
+            out.append(String.format(Locale.ROOT, "+%.3fms %s %s", (span.startNanos - startNanos) / 1e6,
+                    span.endNanos == 0 ? "unfinished" : String.format(Locale.ROOT, "%.3fms",
+                            (span.endNanos - span.startNanos) / 1e6), span.name));
+        }
+        if (droppedSpans > 0) {
+            out.append("\n  (").append(droppedSpans).append(" more spans not recorded)");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.wms.tracing;
+
+import com.wms.metrics.Metrics;
+
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request-scoped tracing. {@link #begin(String)} starts a trace on the handling thread
+ * with the caller's trace id or a new one, sampled at {@code tracing.sampleRate};
+ * {@link #span(String)} times a section of a sampled trace. Requests slower than
+ * {@code tracing.slowRequestMs} are logged with their span breakdown, or with the
+ * total only when they were not sampled.
+ */
+public class Tracer {
+    public static final String TRACE_HEADER = "X-Trace-Id";
+
+    private static volatile Tracer instance;
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private boolean enabled;
+    private double sampleRate;
+    private long slowRequestNanos;
+    private final LongAdder slowRequests;
+
+    private Tracer() {
+        loadProperties();
+        this.slowRequests = Metrics.getInstance().counter("wms_slow_requests_total",
+                "Requests slower than tracing.slowRequestMs");
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            this.enabled = Boolean.parseBoolean(prop.getProperty("tracing.enabled", "true").trim());
+            this.sampleRate = Double.parseDouble(prop.getProperty("tracing.sampleRate", "0.1").trim());
+            long slowMs = Long.parseLong(prop.getProperty("tracing.slowRequestMs", "500").trim());
+            this.slowRequestNanos = slowMs > 0 ? TimeUnit.MILLISECONDS.toNanos(slowMs) : Long.MAX_VALUE;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load tracing configuration", e);
+        }
+    }
+
+    public static Tracer getInstance() {
+        if (instance == null) {
+            synchronized (Tracer.class) {
+                if (instance == null) {
+                    instance = new Tracer();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a trace for the current thread. {@code inboundId} is the caller's
+     * {@code X-Trace-Id} or W3C {@code traceparent} header value; anything that does not
+     * look like an id is replaced. Returns null when tracing is disabled.
+     */
+    public Trace begin(String inboundId) {
+        if (!enabled) {
+            return null;
+        }
+        boolean sampled = sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+        Trace trace = new Trace(parseTraceId(inboundId), sampled);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /** Ends the thread's trace and logs it if the request was slow. */
+    public void finish(Trace trace, String method, String route, int status) {
+        if (trace == null) {
+            return;
+        }
+        CURRENT.remove();
+        long elapsed = trace.getElapsedNanos();
+        if (elapsed < slowRequestNanos || trace.isLongLived()) {
+            return;
+        }
+        slowRequests.increment();
+        String summary = String.format(Locale.ROOT, "Slow request %s %s -> %d in %.3fms trace=%s%s",
+                method, route, status, elapsed / 1e6, trace.getTraceId(), trace.isSampled() ? "" : " (not sampled)");
+        System.err.println(summary + trace.formatSpans());
+    }
+
+    /** Times a section of the current request; a no-op unless the request is sampled. */
+    public static Span span(String name) {
+        Trace trace = CURRENT.get();
+        return trace == null || !trace.isSampled() ? Span.NOOP : trace.start(name);
+    }
+
+    /** The trace of the request running on this thread, or null. */
+    public static Trace current() {
+        return CURRENT.get();
+    }
+
+    static String parseTraceId(String inbound) {
+        if (inbound != null) {
+            String id = inbound.trim();
+            // traceparent: version-traceid-parentid-flags
+            if (id.length() == 55 && id.charAt(2) == '-' && id.charAt(35) == '-') {
+                id = id.substring(3, 35);
+            }
+            if (isValidId(id)) {
+                return id;
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return String.format("%016x%016x", random.nextLong(), random.nextLong());
+    }
+
+    private static boolean isValidId(String id) {
+        if (id.isEmpty() || id.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,12 @@
+package com.wms.util;
+
+/**
+ * Thrown when a change feed cursor points before changes that are no longer kept, so
+ * the client must start over with a full sync; mapped to {@code 410 Gone} by the
+ * controllers.
+ */
+public class CursorExpiredException extends RuntimeException {
+    public CursorExpiredException(String message) {
+        super(message);
+    }
+}
@@ -1,5 +1,7 @@
 package com.wms.util;
 
+import com.wms.metrics.Metrics;
+
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -7,13 +9,39 @@ import java.sql.SQLException;
 import java.util.Properties;
 
 public class DatabaseConnection {
-    private static DatabaseConnection instance;
+    private static volatile DatabaseConnection instance;
+    private ConnectionPool pool;
+    private int streamFetchSize;
     private String url;
     private String username;
     private String password;
 
     private DatabaseConnection() {
         loadProperties();
+        pool.prewarm();
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("wms_db_pool_connections", "Pooled connections by state",
+                pool::getActiveConnections, "state", "active");
+        metrics.gauge("wms_db_pool_connections", "Pooled connections by state",
+                pool::getIdleConnections, "state", "idle");
+        metrics.gauge("wms_db_pool_max_connections", "Pool size limit", pool::getMaxSize);
+        metrics.gauge("wms_db_pool_saturation", "Fraction of the pool currently leased", pool::getSaturation);
+        metrics.gauge("wms_db_pool_waiting_threads", "Threads waiting for a connection", pool::getWaitingThreads);
+        metrics.counter("wms_db_pool_borrows_total", "Connections handed out", pool::getBorrowCount);
+        metrics.counter("wms_db_pool_wait_seconds_total", "Time spent waiting for a connection",
+                () -> pool.getTotalWaitNanos() / 1e9);
+        metrics.gauge("wms_db_pool_max_wait_seconds", "Longest wait for a connection",
+                () -> pool.getMaxWaitNanos() / 1e9);
+        metrics.counter("wms_db_pool_timeouts_total", "Borrows that timed out", pool::getTimeoutCount);
+        metrics.counter("wms_db_pool_evicted_total", "Connections closed as idle or broken", pool::getEvictedCount);
+        metrics.counter("wms_db_statement_cache_total", "Prepared statement cache lookups",
+                pool::getStatementCacheHits, "result", "hit");
+        metrics.counter("wms_db_statement_cache_total", "Prepared statement cache lookups",
+                pool::getStatementCacheMisses, "result", "miss");
     }
 
     private void loadProperties() {
@@ -24,11 +52,22 @@ public class DatabaseConnection {
                 throw new RuntimeException("Unable to find application.properties");
             }
             prop.load(input);
+            Class.forName(prop.getProperty("db.driver"));
             this.url = prop.getProperty("db.url");
             this.username = prop.getProperty("db.username");
             this.password = prop.getProperty("db.password");
-            
-            Class.forName(prop.getProperty("db.driver"));
+            this.streamFetchSize = Integer.parseInt(prop.getProperty("db.streamFetchSize", "500"));
+
+            this.pool = new ConnectionPool(
+                    url,
+                    username,
+                    password,
+                    Integer.parseInt(prop.getProperty("db.pool.minSize", "2")),
+                    Integer.parseInt(prop.getProperty("db.pool.maxSize", "10")),
+                    Long.parseLong(prop.getProperty("db.pool.connectionTimeoutMs", "5000")),
+                    Long.parseLong(prop.getProperty("db.pool.idleTimeoutMs", "600000")),
+                    Long.parseLong(prop.getProperty("db.pool.validationIntervalMs", "5000")),
+                    Integer.parseInt(prop.getProperty("db.pool.statementCacheSize", "32")));
         } catch (Exception e) {
             throw new RuntimeException("Failed to load database configuration", e);
         }
@@ -46,7 +85,24 @@ public class DatabaseConnection {
     }
 
     public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * Opens a connection outside the pool, for long-lived sessions such as
+     * {@code LISTEN} that must not hold a pooled connection.
+     */
+    public Connection openDedicatedConnection() throws SQLException {
         return DriverManager.getConnection(url, username, password);
     }
+
+    /** Rows fetched per round trip when a query is read through a server-side cursor. */
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
 }
 
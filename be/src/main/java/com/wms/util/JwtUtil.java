@@ -1,24 +1,44 @@
 package com.wms.util;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.wms.metrics.LatencyHistogram;
+import com.wms.metrics.Metrics;
+import com.wms.model.AuthPrincipal;
+import com.wms.model.User;
+import com.wms.tracing.Span;
+import com.wms.tracing.Tracer;
 
 import java.io.InputStream;
 import java.util.Date;
 import java.util.Properties;
+import java.util.UUID;
 
 public class JwtUtil {
-    private static JwtUtil instance;
+    /** {@code typ} claim of refresh tokens; access tokens have none. */
+    public static final String REFRESH_TYPE = "refresh";
+
+    private static volatile JwtUtil instance;
     private String secret;
     private long expiration;
+    private long refreshExpiration;
     private Algorithm algorithm;
+    private JWTVerifier verifier;
+    private final LatencyHistogram signTimer;
+    private final LatencyHistogram verifyTimer;
 
     private JwtUtil() {
         loadProperties();
         this.algorithm = Algorithm.HMAC256(secret);
+        this.verifier = JWT.require(algorithm).build();
+        Metrics metrics = Metrics.getInstance();
+        this.signTimer = metrics.histogram("wms_jwt_seconds", "JWT signing and verification time", "op", "sign");
+        this.verifyTimer = metrics.histogram("wms_jwt_seconds", "JWT signing and verification time", "op", "verify");
     }
 
     private void loadProperties() {
@@ -31,6 +51,7 @@ public class JwtUtil {
             prop.load(input);
             this.secret = prop.getProperty("jwt.secret");
             this.expiration = Long.parseLong(prop.getProperty("jwt.expiration"));
+            this.refreshExpiration = Long.parseLong(prop.getProperty("jwt.refreshExpiration", "604800000").trim());
         } catch (Exception e) {
             throw new RuntimeException("Failed to load JWT configuration", e);
         }
@@ -48,21 +69,115 @@ public class JwtUtil {
     }
 
     public String generateToken(String username, Integer userId, String roles) {
+        long startedAt = System.nanoTime();
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration);
 
-        return JWT.create()
+        String token = JWT.create()
                 .withSubject(username)
                 .withClaim("userId", userId)
                 .withClaim("roles", roles)
                 .withIssuedAt(now)
                 .withExpiresAt(expiryDate)
                 .sign(algorithm);
+        signTimer.recordSince(startedAt);
+        return token;
+    }
+
+    /**
+     * Issues a token carrying everything {@link #toPrincipal(DecodedJWT)} needs, so
+     * requests can be authenticated from the token alone.
+     */
+    public String generateToken(User user) {
+        return generateToken(user, null);
+    }
+
+    /**
+     * Issues an access token for a login session. Its {@code jti} and {@code sid}
+     * claims let a single token or the whole session be revoked.
+     */
+    public String generateToken(User user, String sessionId) {
+        long startedAt = System.nanoTime();
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + expiration);
+
+        JWTCreator.Builder builder = JWT.create()
+                .withSubject(user.getUsername())
+                .withJWTId(UUID.randomUUID().toString())
+                .withClaim("userId", user.getId())
+                .withClaim("roles", user.getRoles())
+                .withClaim("status", user.getStatusId())
+                .withClaim("ver", AuthPrincipal.versionOf(user))
+                .withIssuedAt(now)
+                .withExpiresAt(expiryDate);
+        if (sessionId != null) {
+            builder.withClaim("sid", sessionId);
+        }
+        String token = builder.sign(algorithm);
+        signTimer.recordSince(startedAt);
+        return token;
+    }
+
+    /** Issues a single-use refresh token for the session; it carries no permissions. */
+    public String generateRefreshToken(User user, String sessionId) {
+        long startedAt = System.nanoTime();
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + refreshExpiration);
+
+        String token = JWT.create()
+                .withSubject(user.getUsername())
+                .withJWTId(UUID.randomUUID().toString())
+                .withClaim("typ", REFRESH_TYPE)
+                .withClaim("sid", sessionId)
+                .withClaim("userId", user.getId())
+                .withIssuedAt(now)
+                .withExpiresAt(expiryDate)
+                .sign(algorithm);
+        signTimer.recordSince(startedAt);
+        return token;
+    }
+
+    public static boolean isRefreshToken(DecodedJWT jwt) {
+        return REFRESH_TYPE.equals(jwt.getClaim("typ").asString());
+    }
+
+    /** Access token lifetime in milliseconds. */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /** Refresh token lifetime in milliseconds. */
+    public long getRefreshExpiration() {
+        return refreshExpiration;
     }
 
     public DecodedJWT verifyToken(String token) throws JWTVerificationException {
-        JWTVerifier verifier = JWT.require(algorithm).build();
-        return verifier.verify(token);
+        long startedAt = System.nanoTime();
+        try (Span span = Tracer.span("jwt.verify")) {
+            return verifier.verify(token);
+        } finally {
+            verifyTimer.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Builds a principal from the claims of an already verified token, or returns
+     * null when the token predates the claims issued by {@link #generateToken(User)}.
+     * Permissions are not carried: requests are authorized from the roles against the
+     * role catalog.
+     */
+    public AuthPrincipal toPrincipal(DecodedJWT jwt) {
+        Claim status = jwt.getClaim("status");
+        if (status.isMissing()) {
+            return null;
+        }
+        Claim version = jwt.getClaim("ver");
+        return new AuthPrincipal(
+                jwt.getClaim("userId").asInt(),
+                jwt.getSubject(),
+                AuthPrincipal.splitNames(jwt.getClaim("roles").asString()),
+                status.asInt(),
+                version.isMissing() ? 0L : version.asLong());
     }
 
     public String getUsernameFromToken(String token) {
@@ -0,0 +1,142 @@
+package com.wms.util;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds one dedicated, unpooled connection that {@code LISTEN}s on every channel
+ * subscribed to and dispatches Postgres notifications to the handlers. When the
+ * connection is lost it reconnects and calls {@link Handler#onReconnect()}, since
+ * notifications sent while disconnected are gone.
+ */
+public class NotificationListener {
+    private static final long POLL_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private static volatile NotificationListener instance;
+
+    private final DatabaseConnection dbConnection;
+    private final Map<String, List<Handler>> handlers = new ConcurrentHashMap<>();
+    private final Set<String> pendingChannels = ConcurrentHashMap.newKeySet();
+    private volatile boolean connected;
+    private Thread thread;
+
+    public interface Handler {
+        void onNotification(String channel, String payload);
+
+        /** Called after every (re)connect; missed notifications should be caught up here. */
+        default void onReconnect() {
+        }
+    }
+
+    private NotificationListener() {
+        this.dbConnection = DatabaseConnection.getInstance();
+    }
+
+    public static NotificationListener getInstance() {
+        if (instance == null) {
+            synchronized (NotificationListener.class) {
+                if (instance == null) {
+                    instance = new NotificationListener();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public synchronized void subscribe(String channel, Handler handler) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid channel name: " + channel);
+        }
+        handlers.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(handler);
+        pendingChannels.add(channel);
+        if (thread == null) {
+            thread = new Thread(this::run, "pg-notification-listener");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void run() {
+        long backoff = 1000;
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection conn = dbConnection.openDedicatedConnection()) {
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                pendingChannels.addAll(handlers.keySet());
+                listenPending(conn);
+                connected = true;
+                backoff = 1000;
+                handlers.values().forEach(list -> list.forEach(this::reconnected));
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    listenPending(conn);
+                    PGNotification[] notifications = pg.getNotifications((int) POLL_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getName(), notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Notification listener disconnected: " + e.getMessage());
+            } finally {
+                connected = false;
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void listenPending(Connection conn) throws SQLException {
+        if (pendingChannels.isEmpty()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String channel : pendingChannels) {
+                stmt.execute("LISTEN " + channel);
+                pendingChannels.remove(channel);
+            }
+        }
+    }
+
+    private void dispatch(String channel, String payload) {
+        List<Handler> channelHandlers = handlers.get(channel);
+        if (channelHandlers == null) {
+            return;
+        }
+        for (Handler handler : channelHandlers) {
+            try {
+                handler.onNotification(channel, payload);
+            } catch (RuntimeException e) {
+                System.err.println("Notification handler failed on " + channel + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void reconnected(Handler handler) {
+        try {
+            handler.onReconnect();
+        } catch (RuntimeException e) {
+            System.err.println("Notification reconnect handler failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.wms.util;
+
+/**
+ * Thrown when a bounded resource rejects work instead of queueing it; mapped to
+ * {@code 503 Service Unavailable} by the controllers.
+ */
+public class OverloadedException extends RuntimeException {
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,245 @@
+package com.wms.util;
+
+import com.wms.metrics.LatencyHistogram;
+import com.wms.metrics.Metrics;
+import com.wms.tracing.Span;
+import com.wms.tracing.Tracer;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs bcrypt work on a fixed pool sized to the CPU count with a bounded queue,
+ * so a burst of logins or user creations cannot occupy every request thread.
+ * When the queue is full the call fails immediately with {@link OverloadedException}.
+ */
+public class PasswordHashingPool {
+    private static volatile PasswordHashingPool instance;
+
+    private ThreadPoolExecutor executor;
+    private long timeoutMs;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LatencyHistogram hashTimer;
+    private final LatencyHistogram checkTimer;
+    private final LatencyHistogram queueTimer;
+
+    private PasswordHashingPool() {
+        loadProperties();
+        Metrics metrics = Metrics.getInstance();
+        this.hashTimer = metrics.histogram("wms_bcrypt_seconds", "bcrypt time on a hashing thread", "op", "hash");
+        this.checkTimer = metrics.histogram("wms_bcrypt_seconds", "bcrypt time on a hashing thread", "op", "check");
+        this.queueTimer = metrics.histogram("wms_bcrypt_queue_wait_seconds", "Time bcrypt work waited for a thread");
+        metrics.gauge("wms_bcrypt_threads", "Hashing threads", this::getThreads);
+        metrics.gauge("wms_bcrypt_active_threads", "Hashing threads busy", this::getActiveCount);
+        metrics.gauge("wms_bcrypt_queue_depth", "bcrypt tasks waiting", this::getQueueDepth);
+        metrics.gauge("wms_bcrypt_queue_capacity", "bcrypt queue capacity", this::getQueueCapacity);
+        metrics.counter("wms_bcrypt_rejected_total", "bcrypt tasks refused because the queue was full",
+                this::getRejectedCount);
+        metrics.counter("wms_bcrypt_timed_out_total", "bcrypt tasks abandoned after hashing.timeoutMs",
+                this::getTimedOutCount);
+    }
+
+    private void loadProperties() {
+        try (InputStream input = getClass().getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            Properties prop = new Properties();
+            if (input != null) {
+                prop.load(input);
+            }
+            int threads = Integer.parseInt(prop.getProperty("hashing.threads", "0"));
+            int queueSize = Integer.parseInt(prop.getProperty("hashing.queueSize", "64"));
+            this.timeoutMs = Long.parseLong(prop.getProperty("hashing.timeoutMs", "10000"));
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), r -> {
+                        Thread t = new Thread(r, "password-hash-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load password hashing configuration", e);
+        }
+    }
+
+    public static PasswordHashingPool getInstance() {
+        if (instance == null) {
+            synchronized (PasswordHashingPool.class) {
+                if (instance == null) {
+                    instance = new PasswordHashingPool();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public String hashPassword(String plainPassword) {
+        try (Span span = Tracer.span("bcrypt.hash")) {
+            return run(hashTimer, () -> PasswordUtil.hashPassword(plainPassword));
+        }
+    }
+
+    public boolean checkPassword(String plainPassword, String hashedPassword) {
+        try (Span span = Tracer.span("bcrypt.check")) {
+            return run(checkTimer, () -> PasswordUtil.checkPassword(plainPassword, hashedPassword));
+        }
+    }
+
+    /**
+     * Hashes a batch of passwords in parallel. At most one task per worker thread is
+     * queued at a time, leaving the rest of the queue free for interactive logins.
+     */
+    public List<String> hashPasswords(List<String> plainPasswords) {
+        try (Span span = Tracer.span("bcrypt.hashBatch")) {
+            return hashAll(plainPasswords);
+        }
+    }
+
+    private List<String> hashAll(List<String> plainPasswords) {
+        List<Future<String>> futures = new ArrayList<>(plainPasswords.size());
+        Deque<Future<String>> inFlight = new ArrayDeque<>();
+        int window = getThreads();
+
+        try {
+            for (String plainPassword : plainPasswords) {
+                while (true) {
+                    if (inFlight.size() >= window) {
+                        await(inFlight.pollFirst());
+                    }
+                    try {
+                        Future<String> future = submit(hashTimer, () -> PasswordUtil.hashPassword(plainPassword));
+                        futures.add(future);
+                        inFlight.addLast(future);
+                        break;
+                    } catch (OverloadedException e) {
+                        if (inFlight.isEmpty()) {
+                            throw e;
+                        }
+                        await(inFlight.pollFirst());
+                    }
+                }
+            }
+
+            List<String> hashes = new ArrayList<>(futures.size());
+            for (Future<String> future : futures) {
+                hashes.add(await(future));
+            }
+            return hashes;
+        } catch (RuntimeException e) {
+            for (Future<String> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    private <T> T run(LatencyHistogram timer, Callable<T> work) {
+        return await(submit(timer, work));
+    }
+
+    private <T> Future<T> submit(LatencyHistogram timer, Callable<T> work) {
+        long submittedAt = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                totalQueueNanos.addAndGet(startedAt - submittedAt);
+                queueTimer.recordNanos(startedAt - submittedAt);
+                try {
+                    return work.call();
+                } finally {
+                    long took = System.nanoTime() - startedAt;
+                    timer.recordNanos(took);
+                    totalHashNanos.addAndGet(took);
+                    maxHashNanos.accumulateAndGet(took, Math::max);
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new OverloadedException("Server is busy, please retry");
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.incrementAndGet();
+            throw new OverloadedException("Server is busy, please retry");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    public long getTotalQueueNanos() {
+        return totalQueueNanos.get();
+    }
+
+    public long getTotalHashNanos() {
+        return totalHashNanos.get();
+    }
+
+    public long getMaxHashNanos() {
+        return maxHashNanos.get();
+    }
+}
@@ -3,9 +3,15 @@ package com.wms.util;
 import org.mindrot.jbcrypt.BCrypt;
 
 public class PasswordUtil {
+    public static final int DEFAULT_LOG_ROUNDS = 10;
     
     public static String hashPassword(String plainPassword) {
-        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(10));
+        return hashPassword(plainPassword, DEFAULT_LOG_ROUNDS);
+    }
+
+    /** Hashes with an explicit bcrypt cost; each extra round doubles the work. */
+    public static String hashPassword(String plainPassword, int logRounds) {
+        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(logRounds));
     }
     
     public static boolean checkPassword(String plainPassword, String hashedPassword) {
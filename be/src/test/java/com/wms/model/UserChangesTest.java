@@ -0,0 +1,141 @@
+package com.wms.model;
+
+import com.wms.util.CursorExpiredException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Keyset merge of changed rows and tombstones, and cursor round trips, for the change feed. */
+class UserChangesTest {
+
+    private static List<User> users(int... ids) {
+        List<User> users = new ArrayList<>();
+        for (int id : ids) {
+            User user = new User();
+            user.setId(id);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static List<Integer> ids(UserChanges changes) {
+        List<Integer> ids = new ArrayList<>();
+        for (User user : changes.getChanged()) {
+            ids.add(user.getId());
+        }
+        return ids;
+    }
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void interleavesChangesAndDeletesByVersionThenId() {
+        UserChanges changes = UserChanges.merge(
+                users(2, 5, 1), List.of(10L, 10L, 11L),
+                List.of(3, 4), List.of(10L, 11L),
+                10, 0, 0);
+
+        assertEquals(List.of(2, 5, 1), ids(changes));
+        assertEquals(List.of(3, 4), changes.getDeleted());
+        assertFalse(changes.isHasMore());
+        // (11, 4) sorts after (11, 1), so the cursor ends on the delete
+        assertArrayEquals(new long[] {11L, 4L}, UserChanges.decodeCursor(changes.getCursor()));
+    }
+
+    @Test
+    void deleteAtEqualVersionIsTakenBeforeAHigherId() {
+        UserChanges changes = UserChanges.merge(
+                users(7), List.of(20L),
+                List.of(6), List.of(20L),
+                1, 0, 0);
+
+        assertTrue(changes.getChanged().isEmpty());
+        assertEquals(List.of(6), changes.getDeleted());
+        assertTrue(changes.isHasMore());
+        assertArrayEquals(new long[] {20L, 6L}, UserChanges.decodeCursor(changes.getCursor()));
+    }
+
+    @Test
+    void stopsAtLimitAndReportsMore() {
+        UserChanges changes = UserChanges.merge(
+                users(1, 2, 3), List.of(1L, 2L, 4L),
+                List.of(9), List.of(3L),
+                3, 0, 0);
+
+        assertEquals(List.of(1, 2), ids(changes));
+        assertEquals(List.of(9), changes.getDeleted());
+        assertTrue(changes.isHasMore());
+        assertArrayEquals(new long[] {3L, 9L}, UserChanges.decodeCursor(changes.getCursor()));
+    }
+
+    @Test
+    void exactlyLimitEntriesHasNoMore() {
+        UserChanges changes = UserChanges.merge(
+                users(1, 2), List.of(1L, 2L),
+                List.of(), List.of(),
+                2, 0, 0);
+
+        assertEquals(List.of(1, 2), ids(changes));
+        assertFalse(changes.isHasMore());
+    }
+
+    @Test
+    void emptyBatchKeepsTheGivenPosition() {
+        UserChanges changes = UserChanges.merge(List.of(), List.of(), List.of(), List.of(), 10, 42L, 7);
+
+        assertTrue(changes.getChanged().isEmpty());
+        assertTrue(changes.getDeleted().isEmpty());
+        assertFalse(changes.isHasMore());
+        assertArrayEquals(new long[] {42L, 7L}, UserChanges.decodeCursor(changes.getCursor()));
+    }
+
+    @Test
+    void cursorRoundTrips() {
+        String cursor = UserChanges.encodeCursor(9_000_000_000L, 123);
+        assertArrayEquals(new long[] {9_000_000_000L, 123L}, UserChanges.decodeCursor(cursor));
+    }
+
+    @Test
+    void missingCursorStartsFromTheBeginning() {
+        assertArrayEquals(new long[] {0L, 0L}, UserChanges.decodeCursor(null));
+        assertArrayEquals(new long[] {0L, 0L}, UserChanges.decodeCursor(""));
+    }
+
+    @Test
+    void oldFormatCursorIsExpired() {
+        assertThrows(CursorExpiredException.class, () -> UserChanges.decodeCursor(encodeRaw("15:3")));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        for (String cursor : new String[] {
+                "not base64!",
+                encodeRaw("garbage"),
+                encodeRaw("1:10:3"),
+                encodeRaw("2:ten:3"),
+                encodeRaw("2:10:3:4"),
+                encodeRaw("2:10:99999999999")}) {
+            assertThrows(IllegalArgumentException.class, () -> UserChanges.decodeCursor(cursor), cursor);
+        }
+    }
+
+    @Test
+    void cursorAtOrBeforeThePrunedVersionIsExpired() {
+        assertThrows(CursorExpiredException.class, () -> UserChanges.checkNotExpired(5L, 1, 5L));
+        assertThrows(CursorExpiredException.class, () -> UserChanges.checkNotExpired(4L, 1, 5L));
+        UserChanges.checkNotExpired(6L, 1, 5L);
+        // a full sync never expires
+        UserChanges.checkNotExpired(0L, 0, 5L);
+    }
+}
@@ -0,0 +1,412 @@
+package com.wms.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Drives {@link NioHttpEngine} over raw sockets, so framing and connection handling are checked byte for byte. */
+class NioHttpEngineTest {
+    private final Map<String, HttpEngine.Handler> routes = new ConcurrentHashMap<>();
+    private ServerExecutor executor;
+    private NioHttpEngine engine;
+    private int port;
+
+    @AfterEach
+    void stop() {
+        if (engine != null) {
+            engine.stop();
+        }
+        if (executor != null) {
+            executor.shutdown(1000);
+        }
+    }
+
+    private void start(String... settings) throws IOException {
+        Properties prop = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            prop.setProperty(settings[i], settings[i + 1]);
+        }
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        executor = ServerExecutor.bounded(4, 16);
+        engine = new NioHttpEngine(port, executor, exchange -> {
+            HttpEngine.Handler handler = routes.get(exchange.getPath());
+            if (handler == null) {
+                send(exchange, 404, "missing");
+            } else {
+                handler.handle(exchange);
+            }
+        }, prop);
+        engine.start();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static void send(Exchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static void write(Socket socket, String data) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(data.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /** One parsed response; the body is de-chunked, or read to end of stream when there is no length. */
+    private static final class Response {
+        final String statusLine;
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        byte[] body;
+        boolean complete = true;
+
+        Response(String statusLine) {
+            this.statusLine = statusLine;
+        }
+
+        int status() {
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+
+        String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n' && line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+                return line.substring(0, line.length() - 1);
+            }
+            line.append((char) b);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static Response readHead(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        if (statusLine == null) {
+            return null;
+        }
+        Response response = new Response(statusLine);
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            response.headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+        return response;
+    }
+
+    private static Response read(InputStream in) throws IOException {
+        Response response = readHead(in);
+        if (response == null) {
+            return null;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String length = response.headers.get("Content-Length");
+        if ("chunked".equals(response.headers.get("Transfer-Encoding"))) {
+            while (true) {
+                String size = readLine(in);
+                if (size == null) {
+                    response.complete = false;
+                    break;
+                }
+                int n = Integer.parseInt(size, 16);
+                if (n == 0) {
+                    readLine(in);
+                    break;
+                }
+                body.write(in.readNBytes(n));
+                readLine(in);
+            }
+        } else if (length != null) {
+            body.write(in.readNBytes(Integer.parseInt(length)));
+        } else {
+            body.write(in.readAllBytes());
+        }
+        response.body = body.toByteArray();
+        return response;
+    }
+
+    @Test
+    void pipelinedResponsesKeepRequestOrder() throws Exception {
+        routes.put("/slow", exchange -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, 200, "slow");
+        });
+        routes.put("/fast", exchange -> send(exchange, 200, "fast"));
+        start();
+
+        try (Socket socket = connect()) {
+            write(socket, "GET /slow HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "GET /fast HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "GET /fast HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("slow", read(in).text());
+            assertEquals("fast", read(in).text());
+            Response last = read(in);
+            assertEquals("fast", last.text());
+            assertEquals("keep-alive", last.headers.get("Connection"));
+        }
+    }
+
+    @Test
+    void expectContinueIsAnsweredBeforeTheBodyIsSent() throws Exception {
+        routes.put("/echo", exchange -> send(exchange, 200,
+                new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+        start();
+
+        try (Socket socket = connect()) {
+            write(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 5\r\nExpect: 100-continue\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            Response interim = readHead(in);
+            assertEquals(100, interim.status());
+
+            write(socket, "hello");
+            Response response = read(in);
+            assertEquals(200, response.status());
+            assertEquals("hello", response.text());
+        }
+    }
+
+    @Test
+    void oversizedHeaderIsRejectedWith431() throws Exception {
+        start("server.nio.maxHeaderBytes", "1024");
+
+        try (Socket socket = connect()) {
+            write(socket, "GET / HTTP/1.1\r\nX-Filler: " + "a".repeat(2048) + "\r\n");
+            Response response = read(socket.getInputStream());
+            assertEquals(431, response.status());
+            assertEquals("close", response.headers.get("Connection"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void chunkedRequestBodyIsRejectedWith411() throws Exception {
+        start();
+
+        try (Socket socket = connect()) {
+            write(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n");
+            Response response = read(socket.getInputStream());
+            assertEquals(411, response.status());
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void oversizedBodyIsRejectedWith413() throws Exception {
+        start("server.nio.maxBodyBytes", "16");
+
+        try (Socket socket = connect()) {
+            write(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 100\r\n\r\n");
+            Response response = read(socket.getInputStream());
+            assertEquals(413, response.status());
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void malformedRequestsAreRejectedWith400() throws Exception {
+        start();
+
+        for (String request : new String[]{
+                "NONSENSE\r\n\r\n",
+                "GET / HTTP/1.1\r\nno colon here\r\n\r\n",
+                "POST / HTTP/1.1\r\nContent-Length: ten\r\n\r\n"}) {
+            try (Socket socket = connect()) {
+                write(socket, request);
+                Response response = read(socket.getInputStream());
+                assertEquals(400, response.status(), request);
+                assertEquals(-1, socket.getInputStream().read());
+            }
+        }
+    }
+
+    @Test
+    void requestsQueuedBeforeARejectedOneAreStillAnswered() throws Exception {
+        routes.put("/fast", exchange -> send(exchange, 200, "fast"));
+        start();
+
+        try (Socket socket = connect()) {
+            write(socket, "GET /fast HTTP/1.1\r\nHost: x\r\n\r\nNONSENSE\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("fast", read(in).text());
+            assertEquals(400, read(in).status());
+            assertNull(read(in));
+        }
+    }
+
+    @Test
+    void slowReaderBlocksTheWriterAtTheHighWaterMark() throws Exception {
+        int total = 32 * 1024 * 1024;
+        AtomicLong written = new AtomicLong();
+        AtomicBoolean finished = new AtomicBoolean();
+        routes.put("/stream", exchange -> {
+            byte[] block = new byte[8192];
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            for (int sent = 0; sent < total; sent += block.length) {
+                out.write(block);
+                written.addAndGet(block.length);
+            }
+            exchange.close();
+            finished.set(true);
+        });
+        start("server.nio.writeHighWaterBytes", "65536");
+
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(8192);
+            socket.connect(new java.net.InetSocketAddress("localhost", port));
+            socket.setSoTimeout(10000);
+            write(socket, "GET /stream HTTP/1.1\r\nHost: x\r\n\r\n");
+
+            Thread.sleep(1000);
+            assertFalse(finished.get(), "handler ran ahead of a client that is not reading");
+            assertTrue(written.get() < total);
+
+            Response response = read(socket.getInputStream());
+            assertEquals(total, response.body.length);
+            assertTrue(response.complete);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!finished.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(finished.get());
+    }
+
+    @Test
+    void abortFromAnotherThreadReleasesABlockedWriter() throws Exception {
+        AtomicReference<Exchange> streaming = new AtomicReference<>();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        routes.put("/stream", exchange -> {
+            streaming.set(exchange);
+            byte[] block = new byte[8192];
+            exchange.sendResponseHeaders(200, 0);
+            try {
+                OutputStream out = exchange.getResponseBody();
+                while (true) {
+                    out.write(block);
+                }
+            } catch (IOException e) {
+                failure.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        start("server.nio.writeHighWaterBytes", "65536");
+
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(8192);
+            socket.connect(new java.net.InetSocketAddress("localhost", port));
+            socket.setSoTimeout(5000);
+            write(socket, "GET /stream HTTP/1.1\r\nHost: x\r\n\r\n");
+
+            Thread.sleep(500);
+            assertEquals(1, done.getCount(), "writer should be blocked on the slow client");
+            streaming.get().abort();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertNotNull(failure.get());
+
+            Response response = read(socket.getInputStream());
+            assertFalse(response.complete);
+        }
+    }
+
+    @Test
+    void idleConnectionIsClosed() throws Exception {
+        routes.put("/fast", exchange -> send(exchange, 200, "fast"));
+        start("server.nio.idleTimeoutMs", "200");
+
+        try (Socket socket = connect()) {
+            write(socket, "GET /fast HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("fast", read(in).text());
+
+            long started = System.currentTimeMillis();
+            try {
+                assertEquals(-1, in.read());
+            } catch (SocketTimeoutException e) {
+                throw new AssertionError("idle connection was left open", e);
+            }
+            assertTrue(System.currentTimeMillis() - started < 4000);
+        }
+    }
+
+    @Test
+    void http10StreamedBodyIsDelimitedByClose() throws Exception {
+        routes.put("/stream", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write("streamed".getBytes(StandardCharsets.UTF_8));
+            exchange.close();
+        });
+        start();
+
+        try (Socket socket = connect()) {
+            write(socket, "GET /stream HTTP/1.0\r\n\r\n");
+            Response response = read(socket.getInputStream());
+            assertEquals(200, response.status());
+            assertNull(response.headers.get("Content-Length"));
+            assertNull(response.headers.get("Transfer-Encoding"));
+            assertEquals("close", response.headers.get("Connection"));
+            assertEquals("streamed", response.text());
+        }
+    }
+
+    @Test
+    void handlerFailureAfterTheResponseStartedTruncatesTheBody() throws Exception {
+        routes.put("/fail", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("partial".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            throw new IOException("boom");
+        });
+        start();
+
+        try (Socket socket = connect()) {
+            write(socket, "GET /fail HTTP/1.1\r\nHost: x\r\n\r\n");
+            Response response = read(socket.getInputStream());
+            assertEquals(200, response.status());
+            assertFalse(response.complete, "a failed stream must not end with the last chunk");
+        }
+    }
+}
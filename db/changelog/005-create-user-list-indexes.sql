@@ -0,0 +1,22 @@
+--liquibase formatted sql
+
+--changeset system:018-users-created-at-not-null
+UPDATE ums.users SET created_at = CURRENT_TIMESTAMP WHERE created_at IS NULL;
+ALTER TABLE ums.users ALTER COLUMN created_at SET NOT NULL;
+
+--rollback ALTER TABLE ums.users ALTER COLUMN created_at DROP NOT NULL;
+
+--changeset system:019-create-user-list-indexes
+CREATE INDEX idx_users_created_id ON ums.users(created_at DESC, id DESC);
+CREATE INDEX idx_users_status_created_id ON ums.users(status_id, created_at DESC, id DESC);
+CREATE INDEX idx_users_username_id ON ums.users(username, id);
+CREATE INDEX idx_users_username_prefix ON ums.users(lower(username) text_pattern_ops);
+CREATE INDEX idx_users_email_prefix ON ums.users(lower(email) text_pattern_ops);
+CREATE INDEX idx_user_roles_role_user ON ums.user_roles(role_id, user_id);
+
+--rollback DROP INDEX IF EXISTS ums.idx_users_created_id;
+--rollback DROP INDEX IF EXISTS ums.idx_users_status_created_id;
+--rollback DROP INDEX IF EXISTS ums.idx_users_username_id;
+--rollback DROP INDEX IF EXISTS ums.idx_users_username_prefix;
+--rollback DROP INDEX IF EXISTS ums.idx_users_email_prefix;
+--rollback DROP INDEX IF EXISTS ums.idx_user_roles_role_user;
@@ -0,0 +1,191 @@
+--liquibase formatted sql
+
+--changeset system:020-create-user-read-model-table
+CREATE TABLE ums.user_read_model (
+    id INTEGER PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    full_name VARCHAR(255),
+    status_id INTEGER NOT NULL,
+    status_name VARCHAR(50),
+    roles TEXT[] NOT NULL DEFAULT '{}',
+    permissions TEXT[] NOT NULL DEFAULT '{}',
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP,
+    CONSTRAINT fk_user_read_model_user FOREIGN KEY (id) REFERENCES ums.users(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_user_read_model_created_id ON ums.user_read_model(created_at DESC, id DESC);
+CREATE INDEX idx_user_read_model_status_created_id ON ums.user_read_model(status_name, created_at DESC, id DESC);
+CREATE INDEX idx_user_read_model_username_id ON ums.user_read_model(username, id);
+CREATE INDEX idx_user_read_model_username_prefix ON ums.user_read_model(lower(username) text_pattern_ops);
+CREATE INDEX idx_user_read_model_email_prefix ON ums.user_read_model(lower(email) text_pattern_ops);
+CREATE INDEX idx_user_read_model_roles ON ums.user_read_model USING GIN (roles);
+
+--rollback DROP TABLE IF EXISTS ums.user_read_model CASCADE;
+
+--changeset system:021-create-user-read-model-functions splitStatements:false
+CREATE OR REPLACE FUNCTION ums.refresh_user_read_model(p_user_ids INTEGER[]) RETURNS VOID AS $$
+BEGIN
+    INSERT INTO ums.user_read_model (id, username, email, full_name, status_id, status_name,
+                                     roles, permissions, created_at, updated_at)
+    SELECT u.id, u.username, u.email, u.full_name, u.status_id, us.status_name,
+           COALESCE((SELECT ARRAY_AGG(DISTINCT r.role_name ORDER BY r.role_name)
+                     FROM ums.user_roles ur JOIN ums.roles r ON r.id = ur.role_id
+                     WHERE ur.user_id = u.id), '{}'),
+           COALESCE((SELECT ARRAY_AGG(DISTINCT p.permission_name ORDER BY p.permission_name)
+                     FROM ums.user_roles ur
+                     JOIN ums.role_permissions rp ON rp.role_id = ur.role_id
+                     JOIN ums.permissions p ON p.id = rp.permission_id
+                     WHERE ur.user_id = u.id), '{}'),
+           u.created_at, u.updated_at
+    FROM ums.users u
+    LEFT JOIN ums.user_status us ON us.id = u.status_id
+    WHERE u.id = ANY(p_user_ids)
+    ON CONFLICT (id) DO UPDATE SET
+        username = EXCLUDED.username,
+        email = EXCLUDED.email,
+        full_name = EXCLUDED.full_name,
+        status_id = EXCLUDED.status_id,
+        status_name = EXCLUDED.status_name,
+        roles = EXCLUDED.roles,
+        permissions = EXCLUDED.permissions,
+        created_at = EXCLUDED.created_at,
+        updated_at = EXCLUDED.updated_at;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.rebuild_user_read_model() RETURNS INTEGER AS $$
+DECLARE
+    v_count INTEGER;
+BEGIN
+    LOCK TABLE ums.user_read_model IN EXCLUSIVE MODE;
+    DELETE FROM ums.user_read_model;
+    PERFORM ums.refresh_user_read_model(ARRAY(SELECT id FROM ums.users));
+    SELECT COUNT(*) INTO v_count FROM ums.user_read_model;
+    RETURN v_count;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_users_read_model() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM ums.refresh_user_read_model(ARRAY[NEW.id]);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_user_roles_read_model() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM ums.refresh_user_read_model(ARRAY[OLD.user_id]);
+    ELSIF TG_OP = 'UPDATE' AND OLD.user_id <> NEW.user_id THEN
+        PERFORM ums.refresh_user_read_model(ARRAY[OLD.user_id, NEW.user_id]);
+    ELSE
+        PERFORM ums.refresh_user_read_model(ARRAY[NEW.user_id]);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_role_permissions_read_model() RETURNS TRIGGER AS $$
+DECLARE
+    v_role_ids INTEGER[];
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        v_role_ids := ARRAY[OLD.role_id];
+    ELSIF TG_OP = 'UPDATE' THEN
+        v_role_ids := ARRAY[OLD.role_id, NEW.role_id];
+    ELSE
+        v_role_ids := ARRAY[NEW.role_id];
+    END IF;
+    PERFORM ums.refresh_user_read_model(
+        ARRAY(SELECT DISTINCT user_id FROM ums.user_roles WHERE role_id = ANY(v_role_ids)));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_roles_read_model() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM ums.refresh_user_read_model(
+        ARRAY(SELECT user_id FROM ums.user_roles WHERE role_id = NEW.id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_permissions_read_model() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM ums.refresh_user_read_model(
+        ARRAY(SELECT DISTINCT ur.user_id
+              FROM ums.role_permissions rp JOIN ums.user_roles ur ON ur.role_id = rp.role_id
+              WHERE rp.permission_id = NEW.id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_user_status_read_model() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM ums.refresh_user_read_model(ARRAY(SELECT id FROM ums.users WHERE status_id = NEW.id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--rollback DROP FUNCTION IF EXISTS ums.trg_user_status_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.trg_permissions_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.trg_roles_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.trg_role_permissions_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.trg_user_roles_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.trg_users_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.rebuild_user_read_model();
+--rollback DROP FUNCTION IF EXISTS ums.refresh_user_read_model(INTEGER[]);
+
+--changeset system:022-create-user-read-model-triggers
+CREATE TRIGGER users_read_model
+    AFTER INSERT OR UPDATE ON ums.users
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_users_read_model();
+
+CREATE TRIGGER user_roles_read_model
+    AFTER INSERT OR UPDATE OR DELETE ON ums.user_roles
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_user_roles_read_model();
+
+CREATE TRIGGER role_permissions_read_model
+    AFTER INSERT OR UPDATE OR DELETE ON ums.role_permissions
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_role_permissions_read_model();
+
+CREATE TRIGGER roles_read_model
+    AFTER UPDATE OF role_name ON ums.roles
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_roles_read_model();
+
+CREATE TRIGGER permissions_read_model
+    AFTER UPDATE OF permission_name ON ums.permissions
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_permissions_read_model();
+
+CREATE TRIGGER user_status_read_model
+    AFTER UPDATE OF status_name ON ums.user_status
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_user_status_read_model();
+
+--rollback DROP TRIGGER IF EXISTS user_status_read_model ON ums.user_status;
+--rollback DROP TRIGGER IF EXISTS permissions_read_model ON ums.permissions;
+--rollback DROP TRIGGER IF EXISTS roles_read_model ON ums.roles;
+--rollback DROP TRIGGER IF EXISTS role_permissions_read_model ON ums.role_permissions;
+--rollback DROP TRIGGER IF EXISTS user_roles_read_model ON ums.user_roles;
+--rollback DROP TRIGGER IF EXISTS users_read_model ON ums.users;
+
+--changeset system:023-backfill-user-read-model
+SELECT ums.rebuild_user_read_model();
+
+--rollback DELETE FROM ums.user_read_model;
+
+--changeset system:024-drop-superseded-user-list-indexes
+DROP INDEX IF EXISTS ums.idx_users_created_id;
+DROP INDEX IF EXISTS ums.idx_users_status_created_id;
+DROP INDEX IF EXISTS ums.idx_users_username_id;
+DROP INDEX IF EXISTS ums.idx_users_username_prefix;
+DROP INDEX IF EXISTS ums.idx_users_email_prefix;
+DROP INDEX IF EXISTS ums.idx_user_roles_role_user;
+
+--rollback CREATE INDEX idx_users_created_id ON ums.users(created_at DESC, id DESC);
+--rollback CREATE INDEX idx_users_status_created_id ON ums.users(status_id, created_at DESC, id DESC);
+--rollback CREATE INDEX idx_users_username_id ON ums.users(username, id);
+--rollback CREATE INDEX idx_users_username_prefix ON ums.users(lower(username) text_pattern_ops);
+--rollback CREATE INDEX idx_users_email_prefix ON ums.users(lower(email) text_pattern_ops);
+--rollback CREATE INDEX idx_user_roles_role_user ON ums.user_roles(role_id, user_id);
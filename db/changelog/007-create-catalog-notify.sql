@@ -0,0 +1,28 @@
+--liquibase formatted sql
+
+--changeset system:025-create-catalog-notify-function splitStatements:false
+CREATE OR REPLACE FUNCTION ums.notify_catalog_changed() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('ums_catalog_changed', TG_TABLE_NAME);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--rollback DROP FUNCTION IF EXISTS ums.notify_catalog_changed();
+
+--changeset system:026-create-catalog-notify-triggers
+CREATE TRIGGER roles_catalog_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.roles
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.notify_catalog_changed();
+
+CREATE TRIGGER permissions_catalog_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.permissions
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.notify_catalog_changed();
+
+CREATE TRIGGER role_permissions_catalog_changed
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.role_permissions
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.notify_catalog_changed();
+
+--rollback DROP TRIGGER IF EXISTS role_permissions_catalog_changed ON ums.role_permissions;
+--rollback DROP TRIGGER IF EXISTS permissions_catalog_changed ON ums.permissions;
+--rollback DROP TRIGGER IF EXISTS roles_catalog_changed ON ums.roles;
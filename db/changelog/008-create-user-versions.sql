@@ -0,0 +1,98 @@
+--liquibase formatted sql
+
+--changeset system:027-add-user-read-model-row-version
+CREATE SEQUENCE ums.user_row_version_seq;
+
+ALTER TABLE ums.user_read_model
+    ADD COLUMN row_version BIGINT NOT NULL DEFAULT nextval('ums.user_row_version_seq');
+
+--rollback ALTER TABLE ums.user_read_model DROP COLUMN IF EXISTS row_version;
+--rollback DROP SEQUENCE IF EXISTS ums.user_row_version_seq;
+
+--changeset system:028-bump-row-version-on-refresh splitStatements:false
+CREATE OR REPLACE FUNCTION ums.refresh_user_read_model(p_user_ids INTEGER[]) RETURNS VOID AS $$
+BEGIN
+    INSERT INTO ums.user_read_model (id, username, email, full_name, status_id, status_name,
+                                     roles, permissions, created_at, updated_at)
+    SELECT u.id, u.username, u.email, u.full_name, u.status_id, us.status_name,
+           COALESCE((SELECT ARRAY_AGG(DISTINCT r.role_name ORDER BY r.role_name)
+                     FROM ums.user_roles ur JOIN ums.roles r ON r.id = ur.role_id
+                     WHERE ur.user_id = u.id), '{}'),
+           COALESCE((SELECT ARRAY_AGG(DISTINCT p.permission_name ORDER BY p.permission_name)
+                     FROM ums.user_roles ur
+                     JOIN ums.role_permissions rp ON rp.role_id = ur.role_id
+                     JOIN ums.permissions p ON p.id = rp.permission_id
+                     WHERE ur.user_id = u.id), '{}'),
+           u.created_at, u.updated_at
+    FROM ums.users u
+    LEFT JOIN ums.user_status us ON us.id = u.status_id
+    WHERE u.id = ANY(p_user_ids)
+    ON CONFLICT (id) DO UPDATE SET
+        username = EXCLUDED.username,
+        email = EXCLUDED.email,
+        full_name = EXCLUDED.full_name,
+        status_id = EXCLUDED.status_id,
+        status_name = EXCLUDED.status_name,
+        roles = EXCLUDED.roles,
+        permissions = EXCLUDED.permissions,
+        created_at = EXCLUDED.created_at,
+        updated_at = EXCLUDED.updated_at,
+        row_version = EXCLUDED.row_version;
+END;
+$$ LANGUAGE plpgsql;
+
+--rollback CREATE OR REPLACE FUNCTION ums.refresh_user_read_model(p_user_ids INTEGER[]) RETURNS VOID AS $$
+--rollback BEGIN
+--rollback     INSERT INTO ums.user_read_model (id, username, email, full_name, status_id, status_name,
+--rollback                                      roles, permissions, created_at, updated_at)
+--rollback     SELECT u.id, u.username, u.email, u.full_name, u.status_id, us.status_name,
+--rollback            COALESCE((SELECT ARRAY_AGG(DISTINCT r.role_name ORDER BY r.role_name)
+--rollback                      FROM ums.user_roles ur JOIN ums.roles r ON r.id = ur.role_id
+--rollback                      WHERE ur.user_id = u.id), '{}'),
+--rollback            COALESCE((SELECT ARRAY_AGG(DISTINCT p.permission_name ORDER BY p.permission_name)
+--rollback                      FROM ums.user_roles ur
+--rollback                      JOIN ums.role_permissions rp ON rp.role_id = ur.role_id
+--rollback                      JOIN ums.permissions p ON p.id = rp.permission_id
+--rollback                      WHERE ur.user_id = u.id), '{}'),
+--rollback            u.created_at, u.updated_at
+--rollback     FROM ums.users u
+--rollback     LEFT JOIN ums.user_status us ON us.id = u.status_id
+--rollback     WHERE u.id = ANY(p_user_ids)
+--rollback     ON CONFLICT (id) DO UPDATE SET
+--rollback         username = EXCLUDED.username,
+--rollback         email = EXCLUDED.email,
+--rollback         full_name = EXCLUDED.full_name,
+--rollback         status_id = EXCLUDED.status_id,
+--rollback         status_name = EXCLUDED.status_name,
+--rollback         roles = EXCLUDED.roles,
+--rollback         permissions = EXCLUDED.permissions,
+--rollback         created_at = EXCLUDED.created_at,
+--rollback         updated_at = EXCLUDED.updated_at;
+--rollback END;
+--rollback $$ LANGUAGE plpgsql;
+
+--changeset system:029-create-collection-versions splitStatements:false
+CREATE TABLE ums.collection_versions (
+    name VARCHAR(50) PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO ums.collection_versions (name) VALUES ('users');
+
+CREATE OR REPLACE FUNCTION ums.bump_users_version() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE ums.collection_versions
+    SET version = version + 1, updated_at = CURRENT_TIMESTAMP
+    WHERE name = 'users';
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER user_read_model_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.user_read_model
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.bump_users_version();
+
+--rollback DROP TRIGGER IF EXISTS user_read_model_version ON ums.user_read_model;
+--rollback DROP FUNCTION IF EXISTS ums.bump_users_version();
+--rollback DROP TABLE IF EXISTS ums.collection_versions;
@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+--changeset system:030-enable-pg-trgm
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+--rollback DROP EXTENSION IF EXISTS pg_trgm;
+
+--changeset system:031-create-user-search-indexes
+CREATE INDEX idx_user_read_model_username_trgm ON ums.user_read_model USING gin (lower(username) gin_trgm_ops);
+CREATE INDEX idx_user_read_model_email_trgm ON ums.user_read_model USING gin (lower(email) gin_trgm_ops);
+CREATE INDEX idx_user_read_model_full_name_trgm ON ums.user_read_model USING gin (lower(full_name) gin_trgm_ops);
+
+--rollback DROP INDEX IF EXISTS ums.idx_user_read_model_username_trgm;
+--rollback DROP INDEX IF EXISTS ums.idx_user_read_model_email_trgm;
+--rollback DROP INDEX IF EXISTS ums.idx_user_read_model_full_name_trgm;
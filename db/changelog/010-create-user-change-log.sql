@@ -0,0 +1,66 @@
+--liquibase formatted sql
+
+--changeset system:032-bump-users-version-before-write
+-- Bump the users collection version before each statement instead of after it: the
+-- row lock taken by the bump is then held from the first row written until commit, so
+-- the version read by the row triggers below follows commit order.
+DROP TRIGGER IF EXISTS user_read_model_version ON ums.user_read_model;
+
+CREATE TRIGGER user_read_model_version
+    BEFORE INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.user_read_model
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.bump_users_version();
+
+--rollback DROP TRIGGER IF EXISTS user_read_model_version ON ums.user_read_model;
+--rollback CREATE TRIGGER user_read_model_version
+--rollback     AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.user_read_model
+--rollback     FOR EACH STATEMENT EXECUTE FUNCTION ums.bump_users_version();
+
+--changeset system:033-create-user-change-log splitStatements:false
+ALTER TABLE ums.user_read_model ADD COLUMN change_version BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_user_read_model_change_version ON ums.user_read_model(change_version, id);
+
+CREATE TABLE ums.user_tombstones (
+    id INTEGER PRIMARY KEY,
+    change_version BIGINT NOT NULL,
+    deleted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_user_tombstones_change_version ON ums.user_tombstones(change_version, id);
+
+CREATE OR REPLACE FUNCTION ums.trg_user_read_model_change_version() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.change_version := (SELECT version FROM ums.collection_versions WHERE name = 'users');
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_user_read_model_tombstone() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO ums.user_tombstones (id, change_version)
+    VALUES (OLD.id, (SELECT version FROM ums.collection_versions WHERE name = 'users'))
+    ON CONFLICT (id) DO UPDATE SET
+        change_version = EXCLUDED.change_version,
+        deleted_at = CURRENT_TIMESTAMP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER user_read_model_change_version
+    BEFORE INSERT OR UPDATE ON ums.user_read_model
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_user_read_model_change_version();
+
+CREATE TRIGGER user_read_model_tombstone
+    AFTER DELETE ON ums.user_read_model
+    FOR EACH ROW EXECUTE FUNCTION ums.trg_user_read_model_tombstone();
+
+-- existing rows get version 0, which a full sync (cursor 0, id 0) still returns since it compares (version, id)
+UPDATE ums.user_read_model SET change_version = 0;
+
+--rollback DROP TRIGGER IF EXISTS user_read_model_tombstone ON ums.user_read_model;
+--rollback DROP TRIGGER IF EXISTS user_read_model_change_version ON ums.user_read_model;
+--rollback DROP FUNCTION IF EXISTS ums.trg_user_read_model_tombstone();
+--rollback DROP FUNCTION IF EXISTS ums.trg_user_read_model_change_version();
+--rollback DROP TABLE IF EXISTS ums.user_tombstones;
+--rollback DROP INDEX IF EXISTS ums.idx_user_read_model_change_version;
+--rollback ALTER TABLE ums.user_read_model DROP COLUMN IF EXISTS change_version;
@@ -0,0 +1,26 @@
+--liquibase formatted sql
+
+--changeset system:034-create-user-notify-function splitStatements:false
+-- One notification per user row of the read model, which every write to a user, its
+-- roles, or the names of those roles and permissions goes through. The payload is
+-- '<insert|update|delete>:<id>'; Postgres delivers it on commit and folds duplicates
+-- within a transaction.
+CREATE OR REPLACE FUNCTION ums.notify_user_changed() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('ums_user_changed', 'delete:' || OLD.id);
+    ELSE
+        PERFORM pg_notify('ums_user_changed', lower(TG_OP) || ':' || NEW.id);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--rollback DROP FUNCTION IF EXISTS ums.notify_user_changed();
+
+--changeset system:035-create-user-notify-trigger
+CREATE TRIGGER user_read_model_notify
+    AFTER INSERT OR UPDATE OR DELETE ON ums.user_read_model
+    FOR EACH ROW EXECUTE FUNCTION ums.notify_user_changed();
+
+--rollback DROP TRIGGER IF EXISTS user_read_model_notify ON ums.user_read_model;
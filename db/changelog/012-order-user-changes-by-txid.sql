@@ -0,0 +1,118 @@
+--liquibase formatted sql
+
+--changeset system:036-order-user-changes-by-txid splitStatements:false
+-- Stamp read model rows and tombstones with the id of the writing transaction instead
+-- of the users collection version. The change feed only returns rows written by
+-- transactions older than every transaction still running (the snapshot's xmin), so a
+-- transaction that commits later always sorts after any cursor already handed out,
+-- and writers no longer need the collection version row lock to get ordered numbers.
+CREATE OR REPLACE FUNCTION ums.trg_user_read_model_change_version() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.change_version := txid_current();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_user_read_model_tombstone() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO ums.user_tombstones (id, change_version)
+    VALUES (OLD.id, txid_current())
+    ON CONFLICT (id) DO UPDATE SET
+        change_version = EXCLUDED.change_version,
+        deleted_at = CURRENT_TIMESTAMP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- the feed no longer depends on the bump's lock, so take it as late as possible again
+DROP TRIGGER IF EXISTS user_read_model_version ON ums.user_read_model;
+
+CREATE TRIGGER user_read_model_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.user_read_model
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.bump_users_version();
+
+-- collection versions and transaction ids are different counters; restamp existing rows
+-- so none sorts after a later change. Cursors issued before this use an older format
+-- and are rejected by the backend, so clients start over with a full sync.
+ALTER TABLE ums.user_read_model DISABLE TRIGGER user_read_model_notify;
+UPDATE ums.user_read_model SET change_version = txid_current();
+ALTER TABLE ums.user_read_model ENABLE TRIGGER user_read_model_notify;
+UPDATE ums.user_tombstones SET change_version = txid_current();
+
+--rollback DROP TRIGGER IF EXISTS user_read_model_version ON ums.user_read_model;
+--rollback CREATE TRIGGER user_read_model_version
+--rollback     BEFORE INSERT OR UPDATE OR DELETE OR TRUNCATE ON ums.user_read_model
+--rollback     FOR EACH STATEMENT EXECUTE FUNCTION ums.bump_users_version();
+--rollback CREATE OR REPLACE FUNCTION ums.trg_user_read_model_change_version() RETURNS TRIGGER AS $$
+--rollback BEGIN
+--rollback     NEW.change_version := (SELECT version FROM ums.collection_versions WHERE name = 'users');
+--rollback     RETURN NEW;
+--rollback END;
+--rollback $$ LANGUAGE plpgsql;
+--rollback CREATE OR REPLACE FUNCTION ums.trg_user_read_model_tombstone() RETURNS TRIGGER AS $$
+--rollback BEGIN
+--rollback     INSERT INTO ums.user_tombstones (id, change_version)
+--rollback     VALUES (OLD.id, (SELECT version FROM ums.collection_versions WHERE name = 'users'))
+--rollback     ON CONFLICT (id) DO UPDATE SET
+--rollback         change_version = EXCLUDED.change_version,
+--rollback         deleted_at = CURRENT_TIMESTAMP;
+--rollback     RETURN NULL;
+--rollback END;
+--rollback $$ LANGUAGE plpgsql;
+
+--changeset system:037-create-user-tombstone-retention splitStatements:false
+-- Tombstones older than the retention are pruned, at most once an hour, by the first
+-- delete after that. pruned_through is the newest change version pruned so far: a
+-- cursor at or before it may have missed deletes, so the backend answers it with
+-- 410 and the client starts over with a full sync.
+CREATE TABLE ums.change_log_retention (
+    name VARCHAR(50) PRIMARY KEY,
+    retention INTERVAL NOT NULL,
+    pruned_through BIGINT NOT NULL DEFAULT 0,
+    pruned_at TIMESTAMP
+);
+
+INSERT INTO ums.change_log_retention (name, retention) VALUES ('users', INTERVAL '30 days');
+
+CREATE INDEX idx_user_tombstones_deleted_at ON ums.user_tombstones(deleted_at);
+
+CREATE OR REPLACE FUNCTION ums.prune_user_tombstones() RETURNS INTEGER AS $$
+DECLARE
+    v_count INTEGER;
+    v_through BIGINT;
+BEGIN
+    WITH pruned AS (
+        DELETE FROM ums.user_tombstones
+        WHERE deleted_at < CURRENT_TIMESTAMP - (SELECT retention FROM ums.change_log_retention WHERE name = 'users')
+        RETURNING change_version
+    )
+    SELECT count(*), max(change_version) INTO v_count, v_through FROM pruned;
+
+    UPDATE ums.change_log_retention
+    SET pruned_through = GREATEST(pruned_through, COALESCE(v_through, 0)),
+        pruned_at = CURRENT_TIMESTAMP
+    WHERE name = 'users';
+    RETURN v_count;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION ums.trg_user_tombstones_prune() RETURNS TRIGGER AS $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM ums.change_log_retention
+               WHERE name = 'users'
+                 AND (pruned_at IS NULL OR pruned_at < CURRENT_TIMESTAMP - INTERVAL '1 hour')) THEN
+        PERFORM ums.prune_user_tombstones();
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER user_read_model_prune_tombstones
+    AFTER DELETE ON ums.user_read_model
+    FOR EACH STATEMENT EXECUTE FUNCTION ums.trg_user_tombstones_prune();
+
+--rollback DROP TRIGGER IF EXISTS user_read_model_prune_tombstones ON ums.user_read_model;
+--rollback DROP FUNCTION IF EXISTS ums.trg_user_tombstones_prune();
+--rollback DROP FUNCTION IF EXISTS ums.prune_user_tombstones();
+--rollback DROP INDEX IF EXISTS ums.idx_user_tombstones_deleted_at;
+--rollback DROP TABLE IF EXISTS ums.change_log_retention;
@@ -0,0 +1,40 @@
+--liquibase formatted sql
+
+--changeset system:038-stripe-users-collection-version splitStatements:false
+-- Every write to the read model used to bump the single 'users' row, so concurrent
+-- writers queued on its row lock until commit. Spread the counter over 16 stripes
+-- picked by backend pid: a transaction only ever locks one stripe, so writers on
+-- different connections no longer wait on each other and cannot deadlock. The
+-- collection version is the sum of the stripes, which grows with every committed
+-- write just as the single counter did.
+ALTER TABLE ums.collection_versions ADD COLUMN stripe SMALLINT NOT NULL DEFAULT 0;
+ALTER TABLE ums.collection_versions DROP CONSTRAINT collection_versions_pkey;
+ALTER TABLE ums.collection_versions ADD PRIMARY KEY (name, stripe);
+
+INSERT INTO ums.collection_versions (name, stripe)
+SELECT 'users', s FROM generate_series(1, 15) AS s;
+
+CREATE OR REPLACE FUNCTION ums.bump_users_version() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE ums.collection_versions
+    SET version = version + 1, updated_at = CURRENT_TIMESTAMP
+    WHERE name = 'users' AND stripe = pg_backend_pid() % 16;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--rollback CREATE OR REPLACE FUNCTION ums.bump_users_version() RETURNS TRIGGER AS $$
+--rollback BEGIN
+--rollback     UPDATE ums.collection_versions
+--rollback     SET version = version + 1, updated_at = CURRENT_TIMESTAMP
+--rollback     WHERE name = 'users';
+--rollback     RETURN NULL;
+--rollback END;
+--rollback $$ LANGUAGE plpgsql;
+--rollback UPDATE ums.collection_versions c SET version = t.total
+--rollback FROM (SELECT name, sum(version) AS total FROM ums.collection_versions GROUP BY name) t
+--rollback WHERE c.name = t.name AND c.stripe = 0;
+--rollback DELETE FROM ums.collection_versions WHERE stripe <> 0;
+--rollback ALTER TABLE ums.collection_versions DROP CONSTRAINT collection_versions_pkey;
+--rollback ALTER TABLE ums.collection_versions ADD PRIMARY KEY (name);
+--rollback ALTER TABLE ums.collection_versions DROP COLUMN stripe;
@@ -2,6 +2,7 @@ import { Bell, LogOut, User } from "lucide-react";
 import { useAppSelector, useAppDispatch } from "../../store/hooks";
 import { logout } from "../../store/authSlice";
 import { useNavigate } from "react-router-dom";
+import { authApi } from "../../services/api";
 
 export default function Header() {
   const { isAuthenticated, user } = useAppSelector((state) => state.auth);
@@ -9,6 +10,7 @@ export default function Header() {
   const navigate = useNavigate();
 
   const handleLogout = () => {
+    authApi.logout().catch(() => undefined);
     dispatch(logout());
     navigate("/login");
   };
@@ -24,9 +24,9 @@ export default function Login() {
 
     try {
       const response = await authApi.login(username, password);
-      const { token, user } = response.data;
+      const { token, refreshToken, user } = response.data;
 
-      dispatch(setCredentials({ token, user }));
+      dispatch(setCredentials({ token, refreshToken, user }));
       navigate(from, { replace: true });
     } catch (err: any) {
       setError(err.response?.data?.error || "Login failed. Please try again.");
@@ -23,11 +23,50 @@ api.interceptors.request.use(
   }
 );
 
+// Access tokens are short-lived: on a 401, trade the refresh token for a new pair
+// once (shared by concurrent requests) and retry before sending the user to login.
+let refreshing: Promise<string> | null = null;
+
+const refreshAccessToken = (): Promise<string> => {
+  if (!refreshing) {
+    refreshing = axios
+      .post(`${API_URL}/auth/refresh`, { refreshToken: Cookies.get("refreshToken") })
+      .then((response) => {
+        Cookies.set("token", response.data.token, { expires: 7 });
+        Cookies.set("refreshToken", response.data.refreshToken, { expires: 7 });
+        return response.data.token as string;
+      })
+      .finally(() => {
+        refreshing = null;
+      });
+  }
+  return refreshing;
+};
+
 api.interceptors.response.use(
   (response) => response,
-  (error) => {
+  async (error) => {
+    const request = error.config;
+    if (error.response?.status === 401 && Cookies.get("refreshToken") && !request._retried) {
+      request._retried = true;
+      const sent = String(request.headers.Authorization ?? "").replace(/^Bearer /, "");
+      const current = Cookies.get("token");
+      try {
+        // another tab or module may already have refreshed since this request went out
+        const token = current && current !== sent ? current : await refreshAccessToken();
+        request.headers.Authorization = `Bearer ${token}`;
+        return api(request);
+      } catch (refreshError) {
+        if (!axios.isAxiosError(refreshError) || refreshError.response?.status !== 401) {
+          // the refresh failed for another reason (overload, outage): keep the session
+          return Promise.reject(error);
+        }
+        // the refresh token itself was rejected: fall through to login
+      }
+    }
     if (error.response?.status === 401) {
       Cookies.remove("token");
+      Cookies.remove("refreshToken");
       window.location.href = "/login";
     }
     return Promise.reject(error);
@@ -40,6 +79,9 @@ export const authApi = {
   login: (username: string, password: string) => {
     return api.post("/auth/login", { username, password });
   },
+  logout: () => {
+    return api.post("/auth/logout", { refreshToken: Cookies.get("refreshToken") });
+  },
 };
 
 export const userApi = {
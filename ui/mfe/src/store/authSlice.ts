@@ -28,18 +28,20 @@ const authSlice = createSlice({
   reducers: {
     setCredentials: (
       state,
-      action: PayloadAction<{ user: User; token: string }>
+      action: PayloadAction<{ user: User; token: string; refreshToken: string }>
     ) => {
       state.user = action.payload.user;
       state.token = action.payload.token;
       state.isAuthenticated = true;
-      Cookies.set("token", action.payload.token, { expires: 1 });
+      Cookies.set("token", action.payload.token, { expires: 7 });
+      Cookies.set("refreshToken", action.payload.refreshToken, { expires: 7 });
     },
     logout: (state) => {
       state.user = null;
       state.token = null;
       state.isAuthenticated = false;
       Cookies.remove("token");
+      Cookies.remove("refreshToken");
     },
     setUser: (state, action: PayloadAction<User>) => {
       state.user = action.payload;